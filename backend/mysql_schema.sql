@@ -6,7 +6,7 @@ USE musicsquare;
 -- 1. Users table
 CREATE TABLE IF NOT EXISTS users (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(50) UNIQUE NOT NULL,
+    username VARCHAR(50) COLLATE utf8mb4_unicode_ci UNIQUE NOT NULL,
     password VARCHAR(255) NOT NULL,
     avatar VARCHAR(255),
     created_at BIGINT
@@ -32,6 +32,7 @@ CREATE TABLE IF NOT EXISTS playlists (
     external_id VARCHAR(50), -- Original Playlist ID from platform
     can_delete TINYINT(1) DEFAULT 1, -- 0: Cannot delete manually (for synced)
     created_at BIGINT,
+    tracks_fingerprint VARCHAR(64), -- Hash of the last synced track list
     CONSTRAINT fk_pl_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 ) ENGINE=InnoDB;
 
@@ -39,9 +40,15 @@ CREATE TABLE IF NOT EXISTS playlists (
 CREATE TABLE IF NOT EXISTS playlist_songs (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     playlist_id BIGINT NOT NULL,
-    song_json TEXT NOT NULL,
+    song_json TEXT, -- Legacy copy, rows now point at songs via song_ref
+    song_ref BIGINT, -- songs.id
     is_local_add TINYINT(1) DEFAULT 0, -- 0: Imported/Synced, 1: Manually Added
     created_at BIGINT,
+    position BIGINT, -- Listed descending: manual additions above, synced tracks 0, -1, ... in source order
+    song_key VARCHAR(191), -- "source-songId" of a synced track
+    fingerprint VARCHAR(64), -- SHA-256 of song_json
+    INDEX idx_playlist_songs_playlist (playlist_id, position),
+    INDEX idx_playlist_songs_song_ref (song_ref),
     CONSTRAINT fk_ps_playlist FOREIGN KEY (playlist_id) REFERENCES playlists(id) ON DELETE CASCADE
 ) ENGINE=InnoDB;
 
@@ -49,8 +56,13 @@ CREATE TABLE IF NOT EXISTS playlist_songs (
 CREATE TABLE IF NOT EXISTS favorites (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     user_id BIGINT NOT NULL,
-    song_json TEXT NOT NULL,
+    song_id VARCHAR(191), -- Track id from song_json
+    song_json TEXT, -- Legacy copy, rows now point at songs via song_ref
+    song_ref BIGINT, -- songs.id
     created_at BIGINT,
+    UNIQUE KEY uk_favorites_user_song (user_id, song_id),
+    INDEX idx_favorites_user_created (user_id, created_at, id),
+    INDEX idx_favorites_song_ref (song_ref),
     CONSTRAINT fk_fav_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 ) ENGINE=InnoDB;
 
@@ -58,7 +70,53 @@ CREATE TABLE IF NOT EXISTS favorites (
 CREATE TABLE IF NOT EXISTS play_history (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     user_id BIGINT NOT NULL,
-    song_json TEXT NOT NULL,
+    song_json TEXT, -- Legacy copy, rows now point at songs via song_ref
+    song_ref BIGINT, -- songs.id
     played_at BIGINT,
+    INDEX idx_play_history_user_played (user_id, played_at, id),
+    INDEX idx_play_history_song_ref (song_ref),
     CONSTRAINT fk_hist_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 ) ENGINE=InnoDB;
+
+-- 7. Lyrics cache (parsed lines per source/id)
+CREATE TABLE IF NOT EXISTS lyrics (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    cache_key VARCHAR(512) UNIQUE NOT NULL,
+    lines_json MEDIUMTEXT NOT NULL,
+    created_at BIGINT
+) ENGINE=InnoDB;
+
+-- 8. Song catalog (each distinct song JSON stored once, keyed by its SHA-256; unreferenced rows are removed by SongCatalogCleaner)
+CREATE TABLE IF NOT EXISTS songs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    song_key VARCHAR(64) NOT NULL,
+    payload MEDIUMBLOB, -- Encoded by music.songs.codec
+    song_json TEXT, -- Rows written before the codec
+    created_at BIGINT,
+    UNIQUE KEY uk_songs_key (song_key)
+) ENGINE=InnoDB;
+
+-- 9. Library change log (delta sync)
+CREATE TABLE IF NOT EXISTS library_changes (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    version BIGINT NOT NULL,
+    kind VARCHAR(16) NOT NULL, -- 'playlist', 'track', 'favorite', 'history'
+    op VARCHAR(8) NOT NULL, -- 'insert', 'update', 'delete'
+    item_key VARCHAR(191) NOT NULL,
+    parent_id BIGINT,
+    created_at BIGINT,
+    INDEX idx_library_changes_user_version (user_id, version),
+    INDEX idx_library_changes_user_item (user_id, kind, item_key, version),
+    INDEX idx_library_changes_created (created_at)
+) ENGINE=InnoDB;
+
+-- 10. Library versions (per user)
+CREATE TABLE IF NOT EXISTS library_versions (
+    user_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0,
+    playlists_version BIGINT NOT NULL DEFAULT 0,
+    favorites_version BIGINT NOT NULL DEFAULT 0,
+    history_version BIGINT NOT NULL DEFAULT 0,
+    min_version BIGINT NOT NULL DEFAULT 0
+) ENGINE=InnoDB;
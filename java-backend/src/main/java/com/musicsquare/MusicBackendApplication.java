@@ -2,8 +2,10 @@ package com.musicsquare;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MusicBackendApplication {
     public static void main(String[] args) {
         SpringApplication.run(MusicBackendApplication.class, args);
@@ -0,0 +1,112 @@
+package com.musicsquare.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Bloom filter over strings, safe for concurrent adds and probes.
+ *
+ * Sized from the expected number of entries and the target false-positive rate
+ * (m = -n ln p / ln² 2 bits, k = m/n ln 2 hashes). The k bit positions come from two 64-bit
+ * hashes of the UTF-8 bytes combined as h1 + i * h2 (Kirsch and Mitzenmacher). Bits are set
+ * with compare-and-set, so an add is visible to every probe that starts after it returns.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long expectedEntries;
+    private final double targetFpp;
+    private final AtomicLong entries = new AtomicLong();
+
+    public BloomFilter(long expectedEntries, double fpp) {
+        long n = Math.max(1, expectedEntries);
+        double p = Math.min(0.5, Math.max(1e-9, fpp));
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.words = new AtomicLongArray((int) (m / 64));
+        this.bits = m;
+        this.hashes = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        this.expectedEntries = n;
+        this.targetFpp = p;
+    }
+
+    public void put(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = words.get(word);
+            } while ((old & mask) == 0 && !words.compareAndSet(word, old, old | mask));
+        }
+        entries.incrementAndGet();
+    }
+
+    /** False means the value was never added; true means it probably was. */
+    public boolean mightContain(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bits() {
+        return bits;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public long expectedEntries() {
+        return expectedEntries;
+    }
+
+    public double targetFpp() {
+        return targetFpp;
+    }
+
+    /** Number of put calls, duplicates included. */
+    public long entries() {
+        return entries.get();
+    }
+
+    /** False-positive rate implied by the bits set so far: (set bits / m)^k. */
+    public double estimatedFpp() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bits, hashes);
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes, finished with the murmur3 fmix64 avalanche.
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
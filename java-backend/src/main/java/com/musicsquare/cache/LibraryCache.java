@@ -0,0 +1,257 @@
+package com.musicsquare.cache;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user cache of the rendered library responses (/playlists, /favorites, /history), kept
+ * as the JSON bytes that were sent, bounded by total bytes.
+ *
+ * Every user/view pair has a generation that the services bump when they change the
+ * underlying rows; entries are keyed by generation, so a load that started before a write
+ * can only fill a key nobody reads any more. Inside a transaction the generation is bumped
+ * again after commit, so a read between the write and the commit cannot cache the old rows
+ * under the new generation. Concurrent misses for one user share a single load.
+ *
+ * A miss renders into a buffer of at most max-entry-bytes. A view that outgrows it is
+ * flushed and streamed straight from the database, and only a small marker is cached, so the
+ * next request streams at once and one huge library neither sits in the heap nor pushes
+ * other users out of the cache.
+ *
+ * Generations come from one global counter. A user whose generations have not been used
+ * for a TTL is dropped from the map; the user then reads the floor, which is raised to a
+ * fresh generation by every trim, so no key cached before the trim is reachable again.
+ */
+@Component
+public class LibraryCache {
+
+    public enum View { PLAYLISTS, FAVORITES, HISTORY }
+
+    /** Writes a view's JSON, e.g. straight from the database cursor. */
+    @FunctionalInterface
+    public interface Renderer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Cached for views larger than max-entry-bytes: render straight to the client.
+    private static final byte[] OVERSIZED = new byte[0];
+
+    // Slot after the views in each user's generation array: when it was last read or bumped.
+    private static final int LAST_USED = View.values().length;
+
+    @Value("${music.library-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${music.library-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${music.library-cache.max-entry-bytes:4194304}")
+    private long maxEntryBytes;
+
+    @Value("${music.library-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private TtlCache<Key, byte[]> cache;
+
+    private final ConcurrentHashMap<Long, AtomicLongArray> generations = new ConcurrentHashMap<>();
+    private final AtomicLong generationCounter = new AtomicLong();
+    private volatile long generationFloor;
+
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+    private final AtomicLong trimmedUsers = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new TtlCache<>(maxBytes, ttlSeconds * 1000, (key, json) -> 96 + json.length);
+    }
+
+    /** Writes the user's view from the cache, rendering and caching it on a miss. */
+    public void writeTo(Long userId, View view, OutputStream out, Renderer renderer) throws IOException {
+        if (!enabled) {
+            renderer.writeTo(out);
+            return;
+        }
+        Key key = new Key(userId, view, generation(userId, view));
+        boolean[] streamed = new boolean[1];
+        byte[] json;
+        try {
+            json = cache.get(key, k -> {
+                SpillingBuffer buf = new SpillingBuffer(out);
+                try {
+                    renderer.writeTo(buf);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (buf.spilled()) {
+                    streamed[0] = true;
+                    oversized.incrementAndGet();
+                    return OVERSIZED;
+                }
+                return buf.toByteArray();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (streamed[0]) {
+            return;
+        }
+        if (json == OVERSIZED) {
+            renderer.writeTo(out);
+            return;
+        }
+        out.write(json);
+    }
+
+    /** Drops the user's cached views; call on every change to the rows behind them. */
+    public void invalidate(Long userId, View... views) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        bump(userId, views);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(userId, views);
+                }
+            });
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("users", generations.size());
+        m.put("trimmedUsers", trimmedUsers.get());
+        m.put("invalidations", invalidations.get());
+        m.put("oversized", oversized.get());
+        m.putAll(cache.stats());
+        return m;
+    }
+
+    /** Forgets users whose generations were not read or bumped within the TTL. */
+    @Scheduled(fixedDelayString = "${music.library-cache.trim-interval-ms:60000}")
+    public void trimGenerations() {
+        long idleBefore = System.currentTimeMillis() - ttlSeconds * 1000;
+        // Raised before removing, so a reader that finds no generation never uses an old key.
+        generationFloor = generationCounter.incrementAndGet();
+        int before = generations.size();
+        generations.values().removeIf(gens -> gens.get(LAST_USED) < idleBefore);
+        trimmedUsers.addAndGet(before - generations.size());
+    }
+
+    private long generation(Long userId, View view) {
+        AtomicLongArray gens = generations.get(userId);
+        if (gens == null) {
+            return generationFloor;
+        }
+        gens.set(LAST_USED, System.currentTimeMillis());
+        return gens.get(view.ordinal());
+    }
+
+    private void bump(Long userId, View[] views) {
+        AtomicLongArray gens = generations.computeIfAbsent(userId, id -> {
+            AtomicLongArray fresh = new AtomicLongArray(View.values().length + 1);
+            long g = generationCounter.incrementAndGet();
+            for (View v : View.values()) {
+                fresh.set(v.ordinal(), g);
+            }
+            return fresh;
+        });
+        gens.set(LAST_USED, System.currentTimeMillis());
+        for (View view : views) {
+            // Readers move to the new generation first; the old entry can then only be orphaned.
+            long old = gens.getAndSet(view.ordinal(), generationCounter.incrementAndGet());
+            cache.invalidate(new Key(userId, view, old));
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Collects a rendering up to max-entry-bytes; past that it writes what it holds to the
+     * client, drops the buffer and passes everything else straight through.
+     */
+    private final class SpillingBuffer extends OutputStream {
+        private final OutputStream out;
+        private ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+
+        SpillingBuffer(OutputStream out) {
+            this.out = out;
+        }
+
+        boolean spilled() {
+            return buf == null;
+        }
+
+        byte[] toByteArray() {
+            return buf.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buf != null && buf.size() + len > maxEntryBytes) {
+                buf.writeTo(out);
+                buf = null;
+            }
+            if (buf != null) {
+                buf.write(b, off, len);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buf == null) {
+                out.flush();
+            }
+        }
+    }
+
+    private static final class Key {
+        final Long userId;
+        final View view;
+        final long generation;
+
+        Key(Long userId, View view, long generation) {
+            this.userId = userId;
+            this.view = view;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return userId.equals(k.userId) && view == k.view && generation == k.generation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, view, generation);
+        }
+    }
+}
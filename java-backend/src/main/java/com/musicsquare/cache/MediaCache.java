@@ -0,0 +1,465 @@
+package com.musicsquare.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Disk-backed LRU cache for bodies served through /api/proxy.
+ *
+ * Each entry is a data file named after the SHA-256 of the upstream URL plus a small
+ * properties sidecar holding the upstream content type, validators (ETag, Last-Modified)
+ * and Cache-Control. Hits are handed to Tomcat's sendfile where the connector supports it,
+ * so the body goes from the page cache to the socket without passing through the heap.
+ * Files are written to a temp name and atomically
+ * moved into place, so readers never observe a partial body. The index lives in memory
+ * and is rebuilt from the directory on startup, oldest-modified first. The index is guarded
+ * by a {@link ReentrantLock} rather than a monitor, and evicted files are deleted after it
+ * is released, so proxy requests on virtual threads never block a carrier thread here.
+ */
+@Component
+public class MediaCache {
+
+    private static final String DATA_SUFFIX = ".bin";
+    private static final String META_SUFFIX = ".meta";
+    // Sidecar of entries written before validators were stored: the content type only.
+    private static final String LEGACY_META_SUFFIX = ".type";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Sidecar property names.
+    private static final String CONTENT_TYPE = "content-type";
+    private static final String CACHE_CONTROL = "cache-control";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+
+    // Request attributes Tomcat's NIO connector reads to send a file region itself.
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Value("${music.proxy.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${music.proxy.cache.dir:./media-cache}")
+    private String directory;
+
+    @Value("${music.proxy.cache.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${music.proxy.cache.max-entry-bytes:52428800}")
+    private long maxEntryBytes;
+
+    @Value("${music.proxy.buffer-size:16384}")
+    private int bufferSize;
+
+    private Path root;
+
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong sendfileResponses = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        root = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(root);
+
+        List<Path> dataFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(root)) {
+            files.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(p);
+                } else if (name.endsWith(DATA_SUFFIX)) {
+                    dataFiles.add(p);
+                }
+            });
+        }
+        dataFiles.sort(Comparator.comparingLong(MediaCache::lastModified));
+
+        List<Entry> victims;
+        lock.lock();
+        try {
+            for (Path data : dataFiles) {
+                String key = data.getFileName().toString();
+                key = key.substring(0, key.length() - DATA_SUFFIX.length());
+                try {
+                    Properties meta = readMeta(key);
+                    long size = Files.size(data);
+                    entries.put(key, new Entry(key, data, size, meta));
+                    totalBytes += size;
+                } catch (IOException e) {
+                    deleteQuietly(data);
+                }
+            }
+            victims = evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+        deleteAll(victims);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Entry> lookup(String url) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = keyOf(url);
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (entry != null && Files.exists(entry.path)) {
+            hits.incrementAndGet();
+            return Optional.of(entry);
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Opens a writer for a body that is about to be streamed to a client. Returns null when
+     * the body should not be cached (cache disabled, larger than a single entry may be, or
+     * marked no-store or private by the upstream's Cache-Control). The validators and
+     * Cache-Control are stored with the body and handed back on every hit.
+     */
+    public BodyWriter openWriter(String url, String contentType, String cacheControl, String etag,
+            String lastModified, long expectedLength) {
+        if (!enabled || expectedLength > maxEntryBytes || !isStorable(cacheControl)) {
+            return null;
+        }
+        String key = keyOf(url);
+        Properties meta = new Properties();
+        putIfPresent(meta, CONTENT_TYPE, contentType);
+        putIfPresent(meta, CACHE_CONTROL, cacheControl);
+        putIfPresent(meta, ETAG, etag);
+        putIfPresent(meta, LAST_MODIFIED, lastModified);
+        try {
+            Path temp = Files.createTempFile(root, key + "-", TEMP_SUFFIX);
+            return new BodyWriter(key, temp, meta, expectedLength);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends {@code count} bytes of a cached entry starting at {@code position}. Status and
+     * headers must already be set. When the connector supports sendfile the range is only
+     * described in request attributes and Tomcat writes it after the handler returns;
+     * otherwise it is copied through the response stream.
+     */
+    public void serve(Entry entry, long position, long count, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        if (count > 0 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, entry.path.toString());
+            request.setAttribute(SENDFILE_START, position);
+            request.setAttribute(SENDFILE_END, position + count);
+            bytesServed.addAndGet(count);
+            sendfileResponses.incrementAndGet();
+            return;
+        }
+        transfer(entry, position, count, response.getOutputStream());
+    }
+
+    private void transfer(Entry entry, long position, long count, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ)) {
+            channel.position(position);
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[bufferSize];
+            long sent = 0;
+            while (sent < count) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, count - sent));
+                if (n < 0) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+                sent += n;
+            }
+            bytesServed.addAndGet(sent);
+        }
+        out.flush();
+    }
+
+    /** False when a Cache-Control value forbids a shared cache to keep the response. */
+    public static boolean isStorable(String cacheControl) {
+        if (cacheControl == null) {
+            return true;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim().toLowerCase(Locale.ROOT);
+            if (d.startsWith("no-store") || d.startsWith("private")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxBytes", maxBytes);
+        long h = hits.get();
+        long m = misses.get();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        stats.put("bytesStored", bytesStored.get());
+        stats.put("bytesServed", bytesServed.get());
+        stats.put("sendfileResponses", sendfileResponses.get());
+        return stats;
+    }
+
+    private void commit(BodyWriter writer) throws IOException {
+        Path data = root.resolve(writer.key + DATA_SUFFIX);
+        Path meta = root.resolve(writer.key + META_SUFFIX);
+        Path metaTemp = Files.createTempFile(root, writer.key + "-", TEMP_SUFFIX);
+        try (Writer out = Files.newBufferedWriter(metaTemp, StandardCharsets.UTF_8)) {
+            writer.meta.store(out, null);
+        }
+        Files.move(metaTemp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteQuietly(root.resolve(writer.key + LEGACY_META_SUFFIX));
+        Files.move(writer.temp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Entry> victims;
+        lock.lock();
+        try {
+            Entry previous = entries.put(writer.key, new Entry(writer.key, data, writer.written, writer.meta));
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            totalBytes += writer.written;
+            victims = evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+        deleteAll(victims);
+        bytesStored.addAndGet(writer.written);
+    }
+
+    // Caller holds the lock; the returned entries' files are deleted once it is released.
+    private List<Entry> evictIfNeeded() {
+        List<Entry> victims = new ArrayList<>();
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry victim = it.next();
+            it.remove();
+            totalBytes -= victim.size;
+            evictions.incrementAndGet();
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    private void deleteAll(List<Entry> victims) {
+        for (Entry victim : victims) {
+            deleteQuietly(victim.path);
+            deleteQuietly(root.resolve(victim.key + META_SUFFIX));
+            deleteQuietly(root.resolve(victim.key + LEGACY_META_SUFFIX));
+        }
+    }
+
+    private Properties readMeta(String key) throws IOException {
+        Properties meta = new Properties();
+        Path path = root.resolve(key + META_SUFFIX);
+        if (Files.exists(path)) {
+            try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                meta.load(in);
+            }
+            return meta;
+        }
+        Path legacy = root.resolve(key + LEGACY_META_SUFFIX);
+        if (Files.exists(legacy)) {
+            putIfPresent(meta, CONTENT_TYPE, Files.readString(legacy, StandardCharsets.UTF_8).trim());
+        }
+        return meta;
+    }
+
+    private static void putIfPresent(Properties meta, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            meta.setProperty(name, value);
+        }
+    }
+
+    private void remove(Entry entry) {
+        lock.lock();
+        try {
+            if (entries.remove(entry.key, entry)) {
+                totalBytes -= entry.size;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String keyOf(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            // Still open by a reader on some platforms; retry when the JVM exits.
+            p.toFile().deleteOnExit();
+        }
+    }
+
+    public static final class Entry {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private final Properties meta;
+
+        Entry(String key, Path path, long size, Properties meta) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.meta = meta;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getContentType() {
+            return meta.getProperty(CONTENT_TYPE);
+        }
+
+        public String getCacheControl() {
+            return meta.getProperty(CACHE_CONTROL);
+        }
+
+        public String getEtag() {
+            return meta.getProperty(ETAG);
+        }
+
+        public String getLastModified() {
+            return meta.getProperty(LAST_MODIFIED);
+        }
+    }
+
+    /**
+     * Receives a body as it streams past and publishes it on {@link #commit()} only if it
+     * arrived complete. Anything else (client abort, upstream error, oversize) is discarded.
+     */
+    public final class BodyWriter implements AutoCloseable {
+        private final String key;
+        private final Path temp;
+        private final Properties meta;
+        private final long expectedLength;
+        private final FileChannel channel;
+        private long written;
+        private boolean failed;
+        private boolean committed;
+
+        private BodyWriter(String key, Path temp, Properties meta, long expectedLength) throws IOException {
+            this.key = key;
+            this.temp = temp;
+            this.meta = meta;
+            this.expectedLength = expectedLength;
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        public void write(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            if (written + length > maxEntryBytes) {
+                failed = true;
+                return;
+            }
+            try {
+                ByteBuffer src = ByteBuffer.wrap(buffer, offset, length);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                written += length;
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        public void commit() {
+            if (failed || (expectedLength >= 0 && written != expectedLength)) {
+                return;
+            }
+            try {
+                channel.close();
+                MediaCache.this.commit(this);
+                committed = true;
+            } catch (IOException e) {
+                // Leave the entry uncached; close() removes the temp file.
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            if (!committed) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+}
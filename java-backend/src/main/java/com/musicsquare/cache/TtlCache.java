@@ -0,0 +1,232 @@
+package com.musicsquare.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Bounded in-process cache with per-entry expiry and single-flight loading.
+ *
+ * Entries are evicted least-recently-used first once the total weight exceeds the limit
+ * (with the default weigher the limit is simply an entry count). Concurrent misses for the
+ * same key share one loader call; the other callers wait for its result.
+ */
+public class TtlCache<K, V> {
+
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToLongBiFunction<K, V> weigher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalWeight;
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TtlCache(long maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, (k, v) -> 1L);
+    }
+
+    public TtlCache(long maxWeight, long ttlMillis, ToLongBiFunction<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    /** Returns the cached value or null; counted as a hit or a miss like {@link #get}. */
+    public V getIfPresent(K key) {
+        V value = peek(key);
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value or loads it. Only one loader runs per key at a time; a null
+     * result is returned to every waiting caller but is not cached.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = peek(key);
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            // A load for this key may have finished between the peek and claiming the slot.
+            value = peek(key);
+            if (value == null) {
+                long start = System.nanoTime();
+                loads.incrementAndGet();
+                try {
+                    value = loader.apply(key);
+                } finally {
+                    loadNanos.addAndGet(System.nanoTime() - start);
+                }
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            loadFailures.incrementAndGet();
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    public void put(K key, V value, long ttlMillis) {
+        long weight = weigher.applyAsLong(key, value);
+        Node<V> node = new Node<>(value, System.currentTimeMillis() + ttlMillis, weight);
+        lock.lock();
+        try {
+            Node<V> previous = map.put(key, node);
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+            Iterator<Node<V>> it = map.values().iterator();
+            while (totalWeight > maxWeight && it.hasNext()) {
+                Node<V> victim = it.next();
+                if (victim == node) {
+                    // Never evict what was just inserted, unless it alone exceeds the limit.
+                    if (map.size() == 1) {
+                        it.remove();
+                        totalWeight -= victim.weight;
+                        evictions.incrementAndGet();
+                    }
+                    break;
+                }
+                it.remove();
+                totalWeight -= victim.weight;
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Node<V> removed = map.remove(key);
+            if (removed != null) {
+                totalWeight -= removed.weight;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateIf(Predicate<? super K> predicate) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<K, Node<V>>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Node<V>> e = it.next();
+                if (predicate.test(e.getKey())) {
+                    totalWeight -= e.getValue().weight;
+                    it.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        invalidateIf(k -> true);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("size", map.size());
+            stats.put("weight", totalWeight);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxWeight", maxWeight);
+        long h = hits.get();
+        long m = misses.get();
+        long l = loads.get();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("coalescedWaits", coalesced.get());
+        stats.put("loads", l);
+        stats.put("loadFailures", loadFailures.get());
+        stats.put("avgLoadMillis", l == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / l);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private V peek(K key) {
+        lock.lock();
+        try {
+            Node<V> node = map.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (node.expiresAt <= System.currentTimeMillis()) {
+                map.remove(key);
+                totalWeight -= node.weight;
+                return null;
+            }
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final long expiresAt;
+        final long weight;
+
+        Node(V value, long expiresAt, long weight) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.musicsquare.cache;
+
+import com.musicsquare.config.ResponseCacheProperties;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in cache for idempotent GETs relayed through /api/tunehub/request.
+ *
+ * Only hosts with a configured rule are cached. A fresh entry is served directly; a stale
+ * one inside its stale-while-revalidate window is served while a single background refresh
+ * runs; past that, the entry is revalidated synchronously with If-None-Match /
+ * If-Modified-Since when the upstream gave validators, so an unchanged toplist costs a 304.
+ */
+@Component
+public class UpstreamResponseCache {
+
+    @Autowired
+    private ResponseCacheProperties props;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    private TaskExecutor upstreamExecutor;
+
+    private TtlCache<String, CachedResponse> store;
+
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong staleOnError = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        store = new TtlCache<>(props.getMaxEntries(), props.getRetainSeconds() * 1000);
+    }
+
+    /** The rule covering this request, or null when it must go straight upstream. */
+    public ResponseCacheProperties.Rule ruleFor(String url, HttpMethod method) {
+        if (!props.isEnabled() || method != HttpMethod.GET) {
+            return null;
+        }
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (host == null) {
+            return null;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        for (ResponseCacheProperties.Rule rule : props.getRules()) {
+            String h = rule.getHost().toLowerCase(Locale.ROOT);
+            if (host.equals(h) || host.endsWith("." + h)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public String get(String url, HttpHeaders headers, ResponseCacheProperties.Rule rule) {
+        String key = keyOf(url, headers);
+        long now = System.currentTimeMillis();
+        CachedResponse entry = store.getIfPresent(key);
+
+        if (entry != null && now < entry.freshUntil) {
+            freshHits.incrementAndGet();
+            return entry.body;
+        }
+        if (entry != null && now < entry.staleUntil) {
+            staleHits.incrementAndGet();
+            CachedResponse stale = entry;
+            if (!inFlight.containsKey(key)) {
+                upstreamExecutor.execute(() -> {
+                    try {
+                        load(key, url, headers, rule, stale);
+                    } catch (RuntimeException ignored) {
+                        // Keep serving the stale copy; the next request will try again.
+                    }
+                });
+            }
+            return entry.body;
+        }
+
+        misses.incrementAndGet();
+        try {
+            return load(key, url, headers, rule, entry).body;
+        } catch (RuntimeException e) {
+            if (entry != null) {
+                staleOnError.incrementAndGet();
+                return entry.body;
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(store.stats());
+        stats.put("freshHits", freshHits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalescedWaits", coalesced.get());
+        stats.put("notModified", notModified.get());
+        stats.put("staleOnError", staleOnError.get());
+        return stats;
+    }
+
+    private CachedResponse load(String key, String url, HttpHeaders headers,
+            ResponseCacheProperties.Rule rule, CachedResponse previous) {
+        CompletableFuture<CachedResponse> mine = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            CachedResponse result = fetch(url, headers, rule, previous);
+            if (result.cacheable) {
+                long retain = Math.max(props.getRetainSeconds() * 1000, result.staleUntil - System.currentTimeMillis());
+                store.put(key, result, retain);
+            }
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private CachedResponse fetch(String url, HttpHeaders headers, ResponseCacheProperties.Rule rule,
+            CachedResponse previous) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.addAll(headers);
+        if (previous != null && previous.etag != null) {
+            requestHeaders.setIfNoneMatch(previous.etag);
+        }
+        if (previous != null && previous.lastModified != null) {
+            requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+        }
+
+        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(requestHeaders), String.class);
+
+        long now = System.currentTimeMillis();
+        long freshUntil = now + rule.getTtlSeconds() * 1000;
+        long staleUntil = freshUntil + rule.getStaleSeconds() * 1000;
+
+        if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value() && previous != null) {
+            notModified.incrementAndGet();
+            return new CachedResponse(previous.body, previous.etag, previous.lastModified,
+                    freshUntil, staleUntil, true);
+        }
+
+        HttpHeaders responseHeaders = response.getHeaders();
+        String cacheControl = responseHeaders.getCacheControl();
+        boolean cacheable = response.getStatusCode().is2xxSuccessful()
+                && (cacheControl == null || !cacheControl.toLowerCase(Locale.ROOT).contains("no-store"));
+        return new CachedResponse(response.getBody(), responseHeaders.getETag(),
+                responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED), freshUntil, staleUntil, cacheable);
+    }
+
+    private String keyOf(String url, HttpHeaders headers) {
+        // Header names are case-insensitive; sort so equivalent requests share a key.
+        TreeMap<String, String> normalized = new TreeMap<>();
+        for (String name : props.getKeyHeaders()) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                normalized.put(name.toLowerCase(Locale.ROOT), value.trim());
+            }
+        }
+        StringBuilder key = new StringBuilder(url);
+        normalized.forEach((name, value) -> key.append('\n').append(name).append(':').append(value));
+        return key.toString();
+    }
+
+    private static final class CachedResponse {
+        final String body;
+        final String etag;
+        final String lastModified;
+        final long freshUntil;
+        final long staleUntil;
+        final boolean cacheable;
+
+        CachedResponse(String body, String etag, String lastModified,
+                long freshUntil, long staleUntil, boolean cacheable) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.cacheable = cacheable;
+        }
+    }
+}
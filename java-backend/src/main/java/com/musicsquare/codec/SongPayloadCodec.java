@@ -0,0 +1,178 @@
+package com.musicsquare.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary encoding of a song payload (the track JSON the frontend stores).
+ *
+ * An encoded value is one header byte followed by the body. The high nibble of the header is
+ * the format (plain JSON text or Smile, Jackson's binary JSON), the low nibble the
+ * compression (none, or zlib deflate primed with {@link #DICTIONARY}). Decoding only looks at
+ * the header, so values written with any setting stay readable after the configuration
+ * changes. The dictionary is part of the format: changing it needs a new compression id.
+ */
+public final class SongPayloadCodec {
+
+    public enum Format {
+        JSON(1), SMILE(2);
+
+        final int id;
+
+        Format(int id) {
+            this.id = id;
+        }
+    }
+
+    public enum Compression {
+        NONE(0), DEFLATE(1);
+
+        final int id;
+
+        Compression(int id) {
+            this.id = id;
+        }
+    }
+
+    // Field names and URL prefixes shared by most tracks (see TrackMapper). Deflate favours
+    // matches near the end of the dictionary, so the most common strings come last.
+    static final byte[] DICTIONARY = ("\"duration\":\"is_local_add\":\"uid\":"
+            + "https://img1.kuwo.cn/star/albumcover/https://y.gtimg.cn/music/photo_new/T002R300x300M000"
+            + "\"source\":\"kuwo\"}\"source\":\"qq\"}\"source\":\"netease\"}"
+            + "{\"id\":\"kuwo-{\"id\":\"qq-\",\"songId\":\"\",\"title\":\"\",\"artist\":\"\",\"album\":\""
+            + ".jpg\",\"cover\":\"https://p1.music.126.net/{\"id\":\"netease-")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final SmileFactory SMILE = new SmileFactory();
+
+    private final Format format;
+    private final Compression compression;
+    private final int level;
+
+    public SongPayloadCodec(Format format, Compression compression, int level) {
+        this.format = format;
+        this.compression = compression;
+        this.level = level;
+    }
+
+    /** Parses names as used in the configuration, e.g. "smile" and "deflate". */
+    public static SongPayloadCodec of(String format, String compression, int level) {
+        return new SongPayloadCodec(Format.valueOf(format.toUpperCase(Locale.ROOT)),
+                Compression.valueOf(compression.toUpperCase(Locale.ROOT)), level);
+    }
+
+    public String name() {
+        return format.name().toLowerCase(Locale.ROOT) + "+" + compression.name().toLowerCase(Locale.ROOT);
+    }
+
+    public byte[] encode(String json) {
+        byte[] body = format == Format.SMILE ? toSmile(json) : json.getBytes(StandardCharsets.UTF_8);
+        if (compression == Compression.DEFLATE) {
+            body = deflate(body, level);
+        }
+        byte[] out = new byte[body.length + 1];
+        out[0] = (byte) (format.id << 4 | compression.id);
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+
+    public static String decode(byte[] data) {
+        int header = data[0] & 0xFF;
+        byte[] body = Arrays.copyOfRange(data, 1, data.length);
+        switch (header & 0x0F) {
+            case 0:
+                break;
+            case 1:
+                body = inflate(body);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown payload compression " + (header & 0x0F));
+        }
+        switch (header >> 4) {
+            case 1:
+                return new String(body, StandardCharsets.UTF_8);
+            case 2:
+                return fromSmile(body);
+            default:
+                throw new IllegalArgumentException("Unknown payload format " + (header >> 4));
+        }
+    }
+
+    private static byte[] toSmile(String json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser p = JSON.createParser(json); JsonGenerator g = SMILE.createGenerator(out)) {
+            p.nextToken();
+            g.copyCurrentStructure(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String fromSmile(byte[] body) {
+        StringWriter out = new StringWriter(body.length * 2);
+        try (JsonParser p = SMILE.createParser(body); JsonGenerator g = JSON.createGenerator(out)) {
+            p.nextToken();
+            g.copyCurrentStructure(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static byte[] deflate(byte[] input, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] buf = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated payload");
+                    }
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.musicsquare.codec;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores song JSON in the configured {@link SongPayloadCodec} encoding. Hibernate obtains the
+ * converter from the Spring context, and the JDBC paths of the songs catalog call it directly,
+ * so both write and read the same way.
+ */
+@Component
+@Converter
+public class SongPayloadConverter implements AttributeConverter<String, byte[]> {
+
+    @Value("${music.songs.codec.format:json}")
+    private String format;
+
+    @Value("${music.songs.codec.compression:deflate}")
+    private String compression;
+
+    @Value("${music.songs.codec.level:6}")
+    private int level;
+
+    private SongPayloadCodec codec;
+
+    @PostConstruct
+    public void init() {
+        codec = SongPayloadCodec.of(format, compression, level);
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String json) {
+        return json != null ? codec.encode(json) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] data) {
+        return data != null && data.length > 0 ? SongPayloadCodec.decode(data) : null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.musicsquare.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncWebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    @Qualifier("responseStreamingExecutor")
+    private AsyncTaskExecutor responseStreamingExecutor;
+
+    @Value("${music.streaming.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(responseStreamingExecutor);
+        configurer.setDefaultTimeout(timeoutMs);
+    }
+}
@@ -0,0 +1,155 @@
+package com.musicsquare.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executors for upstream fan-out and streamed responses.
+ *
+ * With {@code spring.threads.virtual.enabled=true} on Java 21+ (Boot then also serves requests
+ * on virtual threads) both run every task on its own virtual thread instead of a pool. Each
+ * keeps a concurrency bound: a task first waits for a semaphore permit, parking its virtual
+ * thread rather than the caller. On Java 17 the setting is ignored and the pools are used.
+ *
+ * Requests are then no longer bounded by Tomcat's thread count; what reaches MySQL is bounded
+ * by the Hikari pool (spring.datasource.hikari.maximum-pool-size), and a request that cannot
+ * get a connection within connection-timeout fails instead of queueing without end.
+ */
+@Slf4j
+@Configuration
+public class ExecutorConfig {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private UpstreamProperties upstreamProperties;
+
+    @Value("${music.executor.pool-size:64}")
+    private int poolSize;
+
+    @Value("${music.executor.keep-alive-seconds:60}")
+    private int keepAliveSeconds;
+
+    @Value("${music.executor.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${music.virtual-threads.upstream-concurrency:256}")
+    private int virtualUpstreamConcurrency;
+
+    /**
+     * Runs background and fan-out work against the music platforms (revalidation, batch
+     * lookups). A ThreadPoolExecutor only grows past its core size once the queue is full, so
+     * core and max are the same and idle threads time out instead; tasks queue only when all
+     * threads are busy. Every task blocks on one upstream connection at a time, so threads
+     * beyond music.upstream.max-connections would only wait for the HTTP pool. When the queue
+     * is full the caller runs the task itself rather than failing.
+     */
+    @Bean
+    public AsyncTaskExecutor upstreamExecutor() {
+        if (virtualThreads()) {
+            return virtualExecutor("upstream-", virtualUpstreamConcurrency);
+        }
+        int threads = Math.max(1, Math.min(poolSize, upstreamProperties.getMaxConnections()));
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("upstream-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Writes StreamingResponseBody responses (library listings read in chunks from the DB).
+     * The upstream executor above makes Boot skip its default task executor, so without this
+     * MVC would fall back to a new thread per async request. Each task borrows a JDBC
+     * connection for every chunk it reads, so the pool size must stay below the Hikari pool,
+     * or concurrent listings take every connection; a larger setting is cut to half the
+     * Hikari pool. On virtual threads the pool size stays the limit.
+     */
+    @Bean
+    public AsyncTaskExecutor responseStreamingExecutor(
+            @Value("${music.streaming.pool-size:6}") int poolSize,
+            @Value("${music.streaming.queue-capacity:200}") int queueCapacity) {
+        int connections = jdbcPoolSize();
+        if (poolSize >= connections) {
+            log.warn("music.streaming.pool-size {} is not below the JDBC pool of {} connections; using {}",
+                    poolSize, connections, Math.max(1, connections / 2));
+            poolSize = Math.max(1, connections / 2);
+        }
+        if (virtualThreads()) {
+            return virtualExecutor("stream-", poolSize);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("stream-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * The MySQL driver (Connector/J 8.x) holds a monitor during socket I/O, which pins the virtual thread to its
+     * carrier. Only threads holding a pooled connection can be pinned that way, so the pool has
+     * to stay below the number of carriers or queries can occupy all of them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkCarrierThreads() {
+        if (!virtualThreads()) {
+            return;
+        }
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        int connections = jdbcPoolSize();
+        if (connections >= carriers) {
+            log.warn("JDBC pool of {} connections is not below the {} virtual thread carriers; lower"
+                    + " spring.datasource.hikari.maximum-pool-size or raise -Djdk.virtualThreadScheduler.parallelism",
+                    connections, carriers);
+        }
+    }
+
+    // Hikari's own default when the property is not set.
+    private int jdbcPoolSize() {
+        return environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+    }
+
+    private boolean virtualThreads() {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+
+    private static AsyncTaskExecutor virtualExecutor(String prefix, int concurrency) {
+        log.info("Executor {}* runs on virtual threads, at most {} tasks at a time", prefix, concurrency);
+        // Not setConcurrencyLimit: its throttle waits on a monitor, which would pin the caller.
+        Semaphore permits = new Semaphore(concurrency);
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(task -> () -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+        return executor;
+    }
+}
@@ -0,0 +1,30 @@
+package com.musicsquare.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "music.response-cache")
+public class ResponseCacheProperties {
+    private boolean enabled = true;
+    private long maxEntries = 2000;
+    // Expired entries that carry an ETag/Last-Modified are kept this long for conditional revalidation.
+    private long retainSeconds = 3600;
+    // Request headers that take part in the cache key (lower-case); everything else is ignored.
+    private List<String> keyHeaders = new ArrayList<>(List.of("referer", "cookie", "accept", "origin"));
+    // Only GETs to hosts listed here are cached.
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        // Matches the host itself and any of its subdomains.
+        private String host;
+        private long ttlSeconds = 60;
+        private long staleSeconds = 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com.musicsquare.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "music.toplist")
+public class ToplistProperties {
+    private boolean warmEnabled = true;
+    private long refreshSeconds = 600;
+    // Each refresh is scheduled refreshSeconds +/- this share of it, so snapshots drift apart.
+    private int jitterPercent = 20;
+    // First refreshes after startup are spread over this window instead of firing together.
+    private long initialSpreadSeconds = 30;
+    private int maxConcurrency = 2;
+    private int detailLimit = 100;
+    // Toplists not warmed in the background are fetched on demand and kept this long.
+    private long onDemandTtlSeconds = 300;
+    private long onDemandMaxEntries = 200;
+    // Toplist ids whose detail is kept warm, per platform. The lists themselves are always warmed.
+    private Map<String, List<String>> warm = new LinkedHashMap<>(Map.of(
+            "netease", new ArrayList<>(List.of("19723756", "3779629", "3778678", "2884035")),
+            "qq", new ArrayList<>(List.of("62", "26", "27", "4")),
+            "kuwo", new ArrayList<>(List.of("93", "17", "16"))));
+}
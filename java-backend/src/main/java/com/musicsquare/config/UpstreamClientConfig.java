@@ -0,0 +1,93 @@
+package com.musicsquare.config;
+
+import com.musicsquare.resilience.UpstreamGuard;
+import com.musicsquare.resilience.UpstreamGuardInterceptor;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * One keep-alive connection pool shared by every outbound call to the music platforms.
+ *
+ * Two clients sit on top of the pool: the API client used through {@link RestTemplate}
+ * (transparent gzip), and the media client used by the streaming proxy, which leaves
+ * bodies untouched so Content-Length and byte ranges stay meaningful. Calls through the
+ * {@link RestTemplate} pass the per-host {@link UpstreamGuard}.
+ */
+@Configuration
+public class UpstreamClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager upstreamConnectionManager(UpstreamProperties props) {
+        PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(props.getMaxConnections())
+                .setMaxConnPerRoute(props.getMaxConnectionsPerHost())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(props.getConnectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(props.getReadTimeoutMs()))
+                        .setTimeToLive(TimeValue.ofSeconds(props.getConnectionTtlSeconds()))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        props.getHostMaxConnections().forEach((host, max) -> {
+            manager.setMaxPerRoute(new HttpRoute(new HttpHost("http", host, 80)), max);
+            manager.setMaxPerRoute(new HttpRoute(new HttpHost("https", host, 443)), max);
+        });
+        return manager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient upstreamHttpClient(PoolingHttpClientConnectionManager upstreamConnectionManager,
+            UpstreamProperties props) {
+        return HttpClients.custom()
+                .setConnectionManager(upstreamConnectionManager)
+                .setDefaultRequestConfig(requestConfig(props))
+                .evictIdleConnections(TimeValue.ofSeconds(props.getIdleEvictSeconds()))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient mediaHttpClient(PoolingHttpClientConnectionManager upstreamConnectionManager,
+            UpstreamProperties props) {
+        return HttpClients.custom()
+                .setConnectionManager(upstreamConnectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(requestConfig(props))
+                .disableContentCompression()
+                .build();
+    }
+
+    @Bean
+    public ClientHttpRequestFactory upstreamRequestFactory(
+            @Qualifier("upstreamHttpClient") CloseableHttpClient upstreamHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(upstreamHttpClient);
+    }
+
+    @Bean
+    public RestTemplate upstreamRestTemplate(ClientHttpRequestFactory upstreamRequestFactory, UpstreamGuard upstreamGuard) {
+        RestTemplate restTemplate = new RestTemplate(upstreamRequestFactory);
+        restTemplate.getInterceptors().add(new UpstreamGuardInterceptor(upstreamGuard));
+        return restTemplate;
+    }
+
+    private static RequestConfig requestConfig(UpstreamProperties props) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(props.getPoolTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(props.getReadTimeoutMs()))
+                .build();
+    }
+}
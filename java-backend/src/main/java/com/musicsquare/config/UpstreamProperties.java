@@ -0,0 +1,55 @@
+package com.musicsquare.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "music.upstream")
+public class UpstreamProperties {
+    private int maxConnections = 200;
+    private int maxConnectionsPerHost = 32;
+    // Overrides of maxConnectionsPerHost keyed by host name, e.g. "www.kuwo.cn": 8
+    private Map<String, Integer> hostMaxConnections = new HashMap<>();
+    private long connectTimeoutMs = 3000;
+    private long readTimeoutMs = 10000;
+    // How long a request may wait for a free pooled connection before failing.
+    private long poolTimeoutMs = 2000;
+    private long idleEvictSeconds = 30;
+    private long connectionTtlSeconds = 300;
+
+    private Breaker breaker = new Breaker();
+    private Limiter limiter = new Limiter();
+
+    /** Per-host circuit breaker: trips on the failure rate of the most recent calls. */
+    @Data
+    public static class Breaker {
+        private boolean enabled = true;
+        // Number of recent calls the failure rate is computed over.
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+        private int failureRatePercent = 50;
+        // How long an open breaker rejects calls before letting probes through.
+        private long openSeconds = 15;
+        // Concurrent trial calls while half-open; all must succeed to close again.
+        private int halfOpenProbes = 3;
+    }
+
+    /** Per-host AIMD concurrency limit, adjusted from call outcomes and latency. */
+    @Data
+    public static class Limiter {
+        private boolean enabled = true;
+        private int initialLimit = 16;
+        private int minLimit = 2;
+        private int maxLimit = 32;
+        // Calls slower than this count as congestion, like failures do.
+        private long slowCallMs = 3000;
+        private double backoffRatio = 0.7;
+        // At most one multiplicative decrease per interval, so a burst of failures counts once.
+        private long backoffIntervalMs = 1000;
+    }
+}
@@ -5,6 +5,7 @@ import com.musicsquare.dto.AuthRequest;
 import com.musicsquare.entity.User;
 import com.musicsquare.service.AuthService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -54,7 +55,11 @@ public class AuthController {
         String username = body.get("username");
         String avatar = body.get("avatar");
 
-        authService.updateProfile(userId, username, avatar);
+        try {
+            authService.updateProfile(userId, username, avatar);
+        } catch (DataIntegrityViolationException e) {
+            return ApiResponse.error("用户名已存在");
+        }
         return ApiResponse.success(null);
     }
 
@@ -68,6 +73,11 @@ public class AuthController {
         return ApiResponse.success(Map.of("exists", exists));
     }
 
+    @GetMapping("/auth/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(authService.usernameFilterStats());
+    }
+
     @PostMapping("/auth/reset-password")
     public ApiResponse resetPassword(@RequestBody Map<String, String> body) {
         String username = body.get("username");
@@ -1,40 +1,100 @@
 package com.musicsquare.controller;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.dto.ApiResponse;
 import com.musicsquare.entity.Favorite;
+import com.musicsquare.entity.LibraryVersion;
 import com.musicsquare.service.FavoriteService;
+import com.musicsquare.service.KeysetCursor;
+import com.musicsquare.service.LibraryChangeService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+@Slf4j
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { "ETag", "X-Library-Version" })
 public class FavoriteController {
 
     @Autowired
     private FavoriteService favoriteService;
 
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${music.pagination.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * All favorites. The ETag changes with every change to them (If-None-Match gets a 304),
+     * and X-Library-Version is the version to pass to /changes afterwards.
+     */
     @GetMapping("/favorites")
-    public List<Map<String, Object>> getFavorites(@RequestHeader("Authorization") String auth) {
+    public ResponseEntity<StreamingResponseBody> getFavorites(
+            @RequestHeader("Authorization") String auth,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        Long userId = Long.parseLong(auth.split(" ")[1]);
+        LibraryVersion version = libraryChangeService.versions(userId);
+        String etag = LibraryChangeService.etag(version, LibraryCache.View.FAVORITES, "full");
+        if (LibraryChangeService.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        // Stored songs are streamed as-is (from the DB cursor or the library cache), without parsing each one.
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy("Authorization")
+                .header("X-Library-Version", String.valueOf(version.getVersion()))
+                .body(out -> favoriteService.writeFavorites(userId, out));
+    }
+
+    /** Favorites one page at a time, newest first; pass the previous page's nextCursor to continue. */
+    @GetMapping("/favorites/page")
+    public ApiResponse getFavoritesPage(
+            @RequestHeader("Authorization") String auth,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "${music.pagination.default-page-size:50}") int size) {
         Long userId = Long.parseLong(auth.split(" ")[1]);
-        List<Favorite> favorites = favoriteService.getFavorites(userId);
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Favorite f : favorites) {
+        if (size < 1 || size > maxPageSize) {
+            return ApiResponse.error("Invalid size (max " + maxPageSize + ")");
+        }
+        try {
+            List<Favorite> rows = favoriteService.getFavoritesPage(userId, KeysetCursor.decode(cursor), size);
+            return ApiResponse.success(KeysetCursor.page(rows, size, "items",
+                    f -> new KeysetCursor(f.getCreatedAt(), f.getId()), this::toSongs));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    private List<Map<String, Object>> toSongs(List<Favorite> rows) {
+        List<Map<String, Object>> songs = new ArrayList<>(rows.size());
+        for (Favorite f : rows) {
             try {
-                result.add(objectMapper.readValue(f.getSongJson(), Map.class));
+                @SuppressWarnings("unchecked")
+                Map<String, Object> song = objectMapper.readValue(f.getSongJson(), Map.class);
+                songs.add(song);
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("Skipping favorite {} with unreadable song JSON", f.getId(), e);
             }
         }
-        return result;
+        return songs;
     }
 
     @PostMapping("/favorites")
@@ -75,8 +135,8 @@ public class FavoriteController {
                 String json = objectMapper.writeValueAsString(s);
                 list.add(Map.of("id", songId, "json", json));
             }
-            favoriteService.addBatchFavorites(userId, list);
-            return ApiResponse.success(null);
+            int added = favoriteService.addBatchFavorites(userId, list);
+            return ApiResponse.success(Map.of("added", added));
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
@@ -89,8 +149,8 @@ public class FavoriteController {
         Long userId = Long.parseLong(auth.split(" ")[1]);
         try {
             List<String> ids = (List<String>) body.get("ids");
-            favoriteService.removeBatchFavorites(userId, ids);
-            return ApiResponse.success(null);
+            int removed = ids != null ? favoriteService.removeBatchFavorites(userId, ids) : 0;
+            return ApiResponse.success(Map.of("removed", removed));
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
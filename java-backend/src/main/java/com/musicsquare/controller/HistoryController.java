@@ -1,42 +1,105 @@
 package com.musicsquare.controller;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.entity.LibraryVersion;
 import com.musicsquare.entity.PlayHistory;
 import com.musicsquare.service.HistoryService;
+import com.musicsquare.service.KeysetCursor;
+import com.musicsquare.service.LibraryChangeService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+@Slf4j
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { "ETag", "X-Library-Version" })
 public class HistoryController {
 
     @Autowired
     private HistoryService historyService;
 
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${music.history.limit:100}")
+    private int historyLimit;
+
+    @Value("${music.pagination.max-page-size:500}")
+    private int maxPageSize;
+
+    /** The latest plays, with ETag and X-Library-Version as for /favorites. */
     @GetMapping("/history")
-    public List<Map<String, Object>> getHistory(@RequestHeader("Authorization") String auth) {
+    public ResponseEntity<StreamingResponseBody> getHistory(
+            @RequestHeader("Authorization") String auth,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        Long userId = Long.parseLong(auth.split(" ")[1]);
+        // Queued plays get their versions when written, so write them before reading the version.
+        historyService.flushPending(userId);
+        LibraryVersion version = libraryChangeService.versions(userId);
+        String etag = LibraryChangeService.etag(version, LibraryCache.View.HISTORY, "last" + historyLimit);
+        if (LibraryChangeService.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy("Authorization")
+                .header("X-Library-Version", String.valueOf(version.getVersion()))
+                .body(out -> historyService.writeHistory(userId, historyLimit, out));
+    }
+
+    /**
+     * History one page at a time, newest first. Pass the previous page's nextCursor to
+     * continue; each page costs the same however far back it is.
+     */
+    @GetMapping("/history/page")
+    public ApiResponse getHistoryPage(
+            @RequestHeader("Authorization") String auth,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "${music.pagination.default-page-size:50}") int size) {
         Long userId = Long.parseLong(auth.split(" ")[1]);
-        List<PlayHistory> histories = historyService.getHistory(userId);
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (PlayHistory h : histories) {
+        if (size < 1 || size > maxPageSize) {
+            return ApiResponse.error("Invalid size (max " + maxPageSize + ")");
+        }
+        try {
+            List<PlayHistory> rows = historyService.getHistoryPage(userId, KeysetCursor.decode(cursor), size);
+            return ApiResponse.success(KeysetCursor.page(rows, size, "items",
+                    h -> new KeysetCursor(h.getPlayedAt(), h.getId()), this::toSongs));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    private List<Map<String, Object>> toSongs(List<PlayHistory> rows) {
+        List<Map<String, Object>> songs = new ArrayList<>(rows.size());
+        for (PlayHistory h : rows) {
             try {
+                @SuppressWarnings("unchecked")
                 Map<String, Object> song = objectMapper.readValue(h.getSongJson(), Map.class);
                 song.put("uid", h.getId());
-                result.add(song);
+                songs.add(song);
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("Skipping play {} with unreadable song JSON", h.getId(), e);
             }
         }
-        return result;
+        return songs;
     }
 
     @PostMapping("/history")
@@ -59,13 +122,16 @@ public class HistoryController {
             @RequestBody Map<String, Object> body) {
         Long userId = Long.parseLong(auth.split(" ")[1]);
         try {
-            List<String> ids = (List<String>) body.get("ids");
-            if (ids != null) {
-                historyService.batchDeleteHistory(userId, ids);
-            }
-            return ApiResponse.success(null);
+            List<?> ids = (List<?>) body.get("ids");
+            int removed = ids != null ? historyService.batchDeleteHistory(userId, ids) : 0;
+            return ApiResponse.success(Map.of("removed", removed));
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
     }
+
+    @GetMapping("/history/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(historyService.bufferStats());
+    }
 }
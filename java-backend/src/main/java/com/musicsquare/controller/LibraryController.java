@@ -0,0 +1,46 @@
+package com.musicsquare.controller;
+
+import com.musicsquare.cache.LibraryCache;
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.service.LibraryChangeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "*")
+public class LibraryController {
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Value("${music.changes.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * Changes to the user's playlists, tracks, favorites and history after version
+     * {@code since} (the X-Library-Version of the lists the client holds, or the version of
+     * the previous call). Call again with the returned version while hasMore is set; with
+     * resync the client has to reload the full lists.
+     */
+    @GetMapping("/changes")
+    public ApiResponse getChanges(
+            @RequestHeader("Authorization") String auth,
+            @RequestParam("since") long since,
+            @RequestParam(value = "limit", defaultValue = "${music.changes.max-page-size:1000}") int limit) {
+        Long userId = Long.parseLong(auth.split(" ")[1]);
+        if (since < 0 || limit < 1 || limit > maxPageSize) {
+            return ApiResponse.error("Invalid since or limit (max " + maxPageSize + ")");
+        }
+        return ApiResponse.success(libraryChangeService.changesSince(userId, since, limit));
+    }
+
+    @GetMapping("/library/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(libraryCache.stats());
+    }
+}
@@ -0,0 +1,37 @@
+package com.musicsquare.controller;
+
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.service.LyricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "*")
+public class LyricsController {
+
+    @Autowired
+    private LyricsService lyricsService;
+
+    @GetMapping("/lyrics")
+    public ApiResponse getLyrics(
+            @RequestParam(value = "source", required = false) String source,
+            @RequestParam(value = "id", required = false) String id,
+            @RequestParam(value = "url", required = false) String url) {
+        if ((url == null || url.isBlank()) && (source == null || id == null)) {
+            return ApiResponse.error("Missing source/id or url parameter");
+        }
+        try {
+            return ApiResponse.success(Map.of("lines", lyricsService.getLyrics(source, id, url)));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/lyrics/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(lyricsService.cacheStats());
+    }
+}
@@ -1,61 +1,162 @@
 package com.musicsquare.controller;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.entity.LibraryVersion;
 import com.musicsquare.entity.Playlist;
 import com.musicsquare.entity.PlaylistSong;
+import com.musicsquare.service.KeysetCursor;
+import com.musicsquare.service.LibraryChangeService;
+import com.musicsquare.service.PlaylistDiffService;
+import com.musicsquare.service.PlaylistFetchService;
 import com.musicsquare.service.PlaylistService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+@Slf4j
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { "ETag", "X-Library-Version" })
 public class PlaylistController {
 
     @Autowired
     private PlaylistService playlistService;
 
+    @Autowired
+    private PlaylistFetchService playlistFetchService;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${music.playlists.tracks-max-page-size:500}")
+    private int tracksMaxPageSize;
+
+    /**
+     * The user's playlists. {@code view=summary} returns them without tracks but with a
+     * track_count (tracks are then paged via /playlists/{id}/tracks); the default full view
+     * includes every track, read with a single joined query and streamed without parsing
+     * the stored songs, or served from the per-user library cache. Both carry an ETag and
+     * X-Library-Version as /favorites does.
+     */
     @GetMapping("/playlists")
-    public List<Map<String, Object>> getPlaylists(@RequestHeader("Authorization") String auth) {
+    public ResponseEntity<?> getPlaylists(
+            @RequestHeader("Authorization") String auth,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @RequestParam(value = "view", required = false) String view) {
+        Long userId = Long.parseLong(auth.split(" ")[1]);
+        boolean summary = "summary".equals(view);
+        LibraryVersion version = libraryChangeService.versions(userId);
+        String etag = LibraryChangeService.etag(version, LibraryCache.View.PLAYLISTS, summary ? "summary" : "full");
+        if (LibraryChangeService.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy("Authorization")
+                .header("X-Library-Version", String.valueOf(version.getVersion()));
+
+        if (summary) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            Map<Long, Long> counts = playlistService.countTracksByPlaylist(userId);
+            for (Playlist pl : playlistService.getUserPlaylists(userId)) {
+                Map<String, Object> map = playlistInfo(pl);
+                map.put("track_count", counts.getOrDefault(pl.getId(), 0L));
+                result.add(map);
+            }
+            return ok.body(result);
+        }
+
+        StreamingResponseBody body = out -> playlistService.writePlaylists(userId, out);
+        return ok.contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * One page of a playlist's tracks, newest first. With a {@code cursor} parameter (empty for
+     * the first page) paging is keyset-based and each page carries a nextCursor; otherwise
+     * {@code page} is a 1-based offset page with a total.
+     */
+    @GetMapping("/playlists/{id}/tracks")
+    public ApiResponse getPlaylistTracks(
+            @PathVariable("id") Long playlistId,
+            @RequestHeader("Authorization") String auth,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "100") int size) {
         Long userId = Long.parseLong(auth.split(" ")[1]);
-        List<Playlist> playlists = playlistService.getUserPlaylists(userId);
-        List<Map<String, Object>> result = new ArrayList<>();
-
-        for (Playlist pl : playlists) {
-            Map<String, Object> map = new HashMap<>();
-            map.put("id", pl.getId());
-            map.put("name", pl.getName());
-            map.put("is_sync", pl.getIsSync() == 1);
-            map.put("platform", pl.getPlatform());
-            map.put("external_id", pl.getExternalId());
-            map.put("can_delete", pl.getCanDelete() == 1);
-
-            List<PlaylistSong> songs = playlistService.getPlaylistSongs(pl.getId());
-            List<Map<String, Object>> tracks = new ArrayList<>();
-            for (PlaylistSong s : songs) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> songMap = objectMapper.readValue(s.getSongJson(), Map.class);
-                    songMap.put("uid", s.getId());
-                    songMap.put("is_local_add", s.getIsLocalAdd() == 1);
-                    tracks.add(songMap);
-                } catch (Exception e) {
-                    e.printStackTrace();
+        if (page < 1 || size < 1 || size > tracksMaxPageSize) {
+            return ApiResponse.error("Invalid page or size (max " + tracksMaxPageSize + ")");
+        }
+        if (cursor != null) {
+            try {
+                Optional<List<PlaylistSong>> rows = playlistService.getPlaylistSongsAfter(userId, playlistId,
+                        KeysetCursor.decode(cursor), size);
+                if (rows.isEmpty()) {
+                    return ApiResponse.error("Playlist not found");
                 }
+                return ApiResponse.success(KeysetCursor.page(rows.get(), size, "tracks",
+                        s -> new KeysetCursor(s.getPosition(), s.getId()), this::toTracks));
+            } catch (IllegalArgumentException e) {
+                return ApiResponse.error(e.getMessage());
             }
-            map.put("tracks", tracks);
-            result.add(map);
         }
-        return result;
+        Optional<Page<PlaylistSong>> songs = playlistService.getPlaylistSongsPage(userId, playlistId, page - 1, size);
+        if (songs.isEmpty()) {
+            return ApiResponse.error("Playlist not found");
+        }
+        Page<PlaylistSong> p = songs.get();
+        Map<String, Object> data = new HashMap<>();
+        data.put("tracks", toTracks(p.getContent()));
+        data.put("page", page);
+        data.put("size", size);
+        data.put("total", p.getTotalElements());
+        data.put("hasMore", p.hasNext());
+        return ApiResponse.success(data);
+    }
+
+    private static Map<String, Object> playlistInfo(Playlist pl) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", pl.getId());
+        map.put("name", pl.getName());
+        map.put("is_sync", pl.getIsSync() == 1);
+        map.put("platform", pl.getPlatform());
+        map.put("external_id", pl.getExternalId());
+        map.put("can_delete", pl.getCanDelete() == 1);
+        return map;
+    }
+
+    private List<Map<String, Object>> toTracks(List<PlaylistSong> songs) {
+        List<Map<String, Object>> tracks = new ArrayList<>(songs.size());
+        for (PlaylistSong s : songs) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> songMap = objectMapper.readValue(s.getSongJson(), Map.class);
+                songMap.put("uid", s.getId());
+                songMap.put("is_local_add", s.getIsLocalAdd() == 1);
+                tracks.add(songMap);
+            } catch (Exception e) {
+                log.warn("Skipping playlist track {} with unreadable song JSON", s.getId(), e);
+            }
+        }
+        return tracks;
     }
 
     @PostMapping("/playlists")
@@ -119,6 +220,7 @@ public class PlaylistController {
             @PathVariable("id") Long playlistId,
             @RequestHeader("Authorization") String auth,
             @RequestBody Map<String, Object> body) {
+        Long userId = Long.parseLong(auth.split(" ")[1]);
         List<?> uidsRaw = (List<?>) body.get("uids");
         List<Long> uids = new ArrayList<>();
         if (uidsRaw != null) {
@@ -132,8 +234,8 @@ public class PlaylistController {
                 }
             }
         }
-        playlistService.removeBatchSongsFromPlaylist(playlistId, uids);
-        return ApiResponse.success(null);
+        int removed = playlistService.removeBatchSongsFromPlaylist(userId, playlistId, uids);
+        return ApiResponse.success(Map.of("removed", removed));
     }
 
     @PostMapping("/playlists/batch-songs")
@@ -147,8 +249,8 @@ public class PlaylistController {
             for (Object s : songs) {
                 jsons.add(objectMapper.writeValueAsString(s));
             }
-            int count = playlistService.addBatchSongsToPlaylist(playlistId, jsons);
-            return ApiResponse.success(Map.of("count", count));
+            List<Long> uids = playlistService.addBatchSongsToPlaylist(playlistId, jsons);
+            return ApiResponse.success(Map.of("count", uids.size(), "uids", uids));
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
@@ -172,10 +274,67 @@ public class PlaylistController {
                 }
             }
 
-            playlistService.syncPlaylist(userId, platform, externalId, name, jsons);
-            return ApiResponse.success(Map.of("count", jsons.size()));
+            PlaylistDiffService.SyncSummary summary = playlistService.syncPlaylist(userId, platform, externalId, name, jsons);
+            return ApiResponse.success(Map.of("count", jsons.size(), "summary", summary.toMap()));
+        } catch (Exception e) {
+            log.warn("Playlist sync failed", e);
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/playlists/external")
+    public ApiResponse getExternalPlaylist(
+            @RequestParam("source") String source,
+            @RequestParam("id") String externalId) {
+        try {
+            PlaylistFetchService.FetchedPlaylist fetched = playlistFetchService.fetch(source, externalId);
+            return ApiResponse.success(Map.of(
+                    "name", fetched.name,
+                    "tracks", fetched.tracks,
+                    "failedChunks", fetched.failedChunks,
+                    "truncated", fetched.truncated));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    @PostMapping("/playlists/sync-external")
+    public ApiResponse syncExternalPlaylist(
+            @RequestHeader("Authorization") String auth,
+            @RequestBody Map<String, Object> body) {
+        try {
+            Long userId = Long.parseLong(auth.split(" ")[1]);
+            String platform = (String) body.get("platform");
+            String externalId = body.get("externalId") != null ? body.get("externalId").toString() : null;
+            if (platform == null || externalId == null) {
+                return ApiResponse.error("Missing platform or externalId");
+            }
+
+            // Fetch the full track list here instead of in the browser, then sync it directly.
+            PlaylistFetchService.FetchedPlaylist fetched = playlistFetchService.fetch(platform, externalId);
+            if (fetched.tracks.isEmpty()) {
+                return ApiResponse.error("无法获取歌曲列表或歌单为空");
+            }
+            // A partial list would make the diff delete the tracks of the missing chunks.
+            if (fetched.failedChunks > 0) {
+                return ApiResponse.error("部分歌曲获取失败 (" + fetched.failedChunks + " 组)，已保留原歌单，请稍后重试");
+            }
+            if (fetched.truncated) {
+                return ApiResponse.error("歌单歌曲数超过上限 (" + fetched.tracks.size() + " 首)，已保留原歌单");
+            }
+            String name = body.get("name") != null ? body.get("name").toString() : fetched.name;
+
+            List<String> jsons = new ArrayList<>();
+            for (Map<String, Object> track : fetched.tracks) {
+                jsons.add(objectMapper.writeValueAsString(track));
+            }
+            PlaylistDiffService.SyncSummary summary = playlistService.syncPlaylist(userId, platform, externalId, name, jsons);
+            return ApiResponse.success(Map.of(
+                    "count", jsons.size(),
+                    "name", name,
+                    "summary", summary.toMap()));
         } catch (Exception e) {
-             e.printStackTrace();
+            log.warn("External playlist sync failed", e);
             return ApiResponse.error(e.getMessage());
         }
     }
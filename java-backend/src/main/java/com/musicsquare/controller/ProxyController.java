@@ -1,36 +1,285 @@
 package com.musicsquare.controller;
 
+import com.musicsquare.cache.MediaCache;
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.resilience.UpstreamGuard;
+import com.musicsquare.resilience.UpstreamGuardInterceptor;
+import com.musicsquare.resilience.UpstreamUnavailableException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class ProxyController {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Request headers forwarded upstream so the browser can seek (Range) and revalidate.
+    private static final List<String> FORWARD_REQUEST_HEADERS = List.of(
+            HttpHeaders.RANGE, HttpHeaders.IF_RANGE);
+
+    // Response headers copied back to the client untouched.
+    private static final List<String> FORWARD_RESPONSE_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH, HttpHeaders.CONTENT_RANGE,
+            HttpHeaders.ACCEPT_RANGES, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED);
+
+    // What <audio> sends for the first request of a track; the 206 reply carries the whole body.
+    private static final String OPEN_ENDED_RANGE = "bytes=0-";
+
+    // Sent when the upstream gave no Cache-Control of its own.
+    private static final String DEFAULT_CACHE_CONTROL = "public, max-age=3600";
+
+    @Autowired
+    @Qualifier("mediaHttpClient")
+    private CloseableHttpClient mediaHttpClient;
+
+    @Autowired
+    private MediaCache mediaCache;
+
+    @Autowired
+    private UpstreamGuard upstreamGuard;
+
+    @Value("${music.proxy.buffer-size:16384}")
+    private int bufferSize;
 
     @GetMapping("/proxy")
-    public ResponseEntity<byte[]> proxy(@RequestParam("url") String targetUrl) {
+    public void proxy(@RequestParam("url") String targetUrl,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent", "Mozilla/5.0");
-            // No strict referer for broad compatibility
+            String range = request.getHeader(HttpHeaders.RANGE);
+            URI uri = URI.create(targetUrl);
+            Optional<MediaCache.Entry> cached = mediaCache.lookup(targetUrl);
+            if (cached.isPresent()) {
+                // Hits take a permit like live requests, so an open breaker or a full limit for
+                // the host refuses them the same way and the host's concurrency stays bounded.
+                UpstreamGuard.Permit permit = upstreamGuard.acquire(uri);
+                try {
+                    serveCached(cached.get(), range, request.getHeader(HttpHeaders.IF_RANGE), permit, request,
+                            response);
+                } finally {
+                    permit.success();
+                }
+                return;
+            }
 
-            byte[] content = restTemplate.getForObject(targetUrl, byte[].class);
+            HttpGet upstream = new HttpGet(uri);
+            upstream.setHeader("User-Agent", "Mozilla/5.0");
+            // No strict referer for broad compatibility
+            for (String name : FORWARD_REQUEST_HEADERS) {
+                String value = request.getHeader(name);
+                if (value != null) {
+                    upstream.setHeader(name, value);
+                }
+            }
 
-            HttpHeaders responseHeaders = new HttpHeaders();
-            responseHeaders.setAccessControlAllowOrigin("*");
-            responseHeaders.setCacheControl("public, max-age=3600");
+            // The permit covers the call up to the response headers; streaming the body can
+            // take minutes and is bounded by the connection pool instead.
+            UpstreamGuard.Permit permit = upstreamGuard.acquire(uri);
+            CloseableHttpResponse upstreamResponse;
+            try {
+                upstreamResponse = mediaHttpClient.execute(upstream);
+            } catch (IOException | RuntimeException e) {
+                permit.failure();
+                throw e;
+            }
+            try (upstreamResponse) {
+                int status = upstreamResponse.getCode();
+                if (UpstreamGuardInterceptor.isFailure(status)) {
+                    permit.failure();
+                } else {
+                    permit.success();
+                }
+                response.setStatus(status);
+                for (String name : FORWARD_RESPONSE_HEADERS) {
+                    Header header = upstreamResponse.getFirstHeader(name);
+                    if (header != null) {
+                        response.setHeader(name, header.getValue());
+                    }
+                }
+                response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+                String cacheControl = headerValue(upstreamResponse, HttpHeaders.CACHE_CONTROL);
+                response.setHeader(HttpHeaders.CACHE_CONTROL,
+                        cacheControl != null ? cacheControl : DEFAULT_CACHE_CONTROL);
 
-            return new ResponseEntity<>(content, responseHeaders, HttpStatus.OK);
+                HttpEntity entity = upstreamResponse.getEntity();
+                if (entity == null) {
+                    return;
+                }
+                long fullLength = fullBodyLength(range, status, upstreamResponse);
+                try (MediaCache.BodyWriter writer = fullLength == Long.MIN_VALUE ? null
+                        : mediaCache.openWriter(targetUrl, entity.getContentType(), cacheControl,
+                                headerValue(upstreamResponse, HttpHeaders.ETAG),
+                                headerValue(upstreamResponse, HttpHeaders.LAST_MODIFIED), fullLength)) {
+                    copy(entity.getContent(), response.getOutputStream(), writer);
+                    if (writer != null) {
+                        writer.commit();
+                    }
+                } catch (IOException e) {
+                    // Drop the connection instead of draining the rest of the track into the pool.
+                    upstream.cancel();
+                    throw e;
+                }
+            }
+        } catch (UpstreamUnavailableException e) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        } catch (IOException e) {
+            // Client aborts (seeking, skipping tracks) end up here as well; nothing left to send.
+            if (!response.isCommitted()) {
+                response.setStatus(HttpStatus.BAD_GATEWAY.value());
+            }
         } catch (Exception e) {
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+
+    @GetMapping("/proxy/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(mediaCache.stats());
+    }
+
+    private void serveCached(MediaCache.Entry entry, String range, String ifRange, UpstreamGuard.Permit permit,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = entry.getSize();
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+
+        if (range != null && ifRange != null && !matchesIfRange(entry, ifRange)) {
+            // The client's copy is a different version: send the whole body instead of a piece.
+            range = null;
+        }
+        if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+            String spec = range.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    start = Math.max(0, size - suffix);
+                    partial = true;
+                } else if (dash > 0) {
+                    long first = Long.parseLong(spec.substring(0, dash));
+                    long last = dash < spec.length() - 1 ? Long.parseLong(spec.substring(dash + 1)) : end;
+                    start = first;
+                    end = Math.min(end, last);
+                    partial = true;
+                }
+            } catch (NumberFormatException ignored) {
+                // Malformed range: fall back to the full body.
+            }
+            if (partial && (start >= size || start > end)) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+        }
+
+        long length = end - start + 1;
+        response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        if (entry.getContentType() != null) {
+            response.setContentType(entry.getContentType());
+        }
+        response.setContentLengthLong(length);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (partial) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                entry.getCacheControl() != null ? entry.getCacheControl() : DEFAULT_CACHE_CONTROL);
+        if (entry.getEtag() != null) {
+            response.setHeader(HttpHeaders.ETAG, entry.getEtag());
+        }
+        if (entry.getLastModified() != null) {
+            response.setHeader(HttpHeaders.LAST_MODIFIED, entry.getLastModified());
+        }
+
+        // As for live requests, the permit does not cover sending the body.
+        permit.success();
+        mediaCache.serve(entry, start, length, request, response);
+    }
+
+    /**
+     * If-Range holds either an entity tag, which must match the stored one strongly (weak
+     * tags never match), or an HTTP date, which must equal the stored Last-Modified.
+     */
+    private static boolean matchesIfRange(MediaCache.Entry entry, String ifRange) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return !value.startsWith("W/") && value.equals(entry.getEtag());
+        }
+        return value.equals(entry.getLastModified());
+    }
+
+    /**
+     * Length of the complete body when this response carries all of it and may be cached,
+     * -1 when complete but of unknown length, or Long.MIN_VALUE when it must not be cached.
+     */
+    private static long fullBodyLength(String range, int status, HttpResponse upstreamResponse) {
+        if (range == null && status == HttpStatus.OK.value()) {
+            Header length = upstreamResponse.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            try {
+                return length != null ? Long.parseLong(length.getValue().trim()) : -1L;
+            } catch (NumberFormatException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+        if (OPEN_ENDED_RANGE.equals(range) && status == HttpStatus.PARTIAL_CONTENT.value()) {
+            Header header = upstreamResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            String contentRange = header != null ? header.getValue() : null;
+            if (contentRange != null && contentRange.startsWith("bytes 0-")) {
+                int slash = contentRange.indexOf('/');
+                try {
+                    long total = Long.parseLong(contentRange.substring(slash + 1).trim());
+                    long last = Long.parseLong(contentRange.substring("bytes 0-".length(), slash).trim());
+                    if (last == total - 1) {
+                        return total;
+                    }
+                } catch (RuntimeException ignored) {
+                    // "*" totals and malformed headers are simply not cached.
+                }
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static String headerValue(HttpResponse upstreamResponse, String name) {
+        Header header = upstreamResponse.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    private void copy(InputStream in, OutputStream out, MediaCache.BodyWriter writer) throws IOException {
+        // One fixed-size buffer per stream; the body is never held in memory as a whole.
+        byte[] buffer = new byte[bufferSize];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (writer != null) {
+                writer.write(buffer, 0, read);
+            }
         }
+        out.flush();
     }
 }
@@ -0,0 +1,90 @@
+package com.musicsquare.controller;
+
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.service.SearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "*")
+public class SearchController {
+
+    @Autowired
+    private SearchService searchService;
+
+    @Value("${music.search.deadline-ms:8000}")
+    private long deadlineMs;
+
+    @GetMapping("/search")
+    public ApiResponse search(
+            @RequestParam("keyword") String keyword,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "dedupe", defaultValue = "true") boolean dedupe) {
+        if (keyword.isBlank()) {
+            return ApiResponse.error("Missing keyword parameter");
+        }
+        List<SearchService.SourceResult> results = searchService.searchAll(keyword, Math.max(page, 1),
+                clampLimit(limit), null);
+        return ApiResponse.success(toResponse(results, dedupe));
+    }
+
+    /**
+     * Server-sent events variant: one "source" event per platform as soon as it answers,
+     * then a "done" event carrying the merged list. No thread waits for the sources; the
+     * events are sent from the threads that complete them.
+     */
+    @GetMapping(value = "/search", params = "stream=true")
+    public SseEmitter searchStream(
+            @RequestParam("keyword") String keyword,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "dedupe", defaultValue = "true") boolean dedupe) {
+        SseEmitter emitter = new SseEmitter(deadlineMs + 2000);
+        searchService.searchAllAsync(keyword, Math.max(page, 1), clampLimit(limit), (source, result) -> {
+            Map<String, Object> event = new LinkedHashMap<>(result.summary());
+            event.put("source", source);
+            event.put("tracks", result.tracks);
+            try {
+                emitter.send(SseEmitter.event().name("source").data(event));
+            } catch (IOException | IllegalStateException ignored) {
+                // Client went away; the final send below fails the same way.
+            }
+        }).whenComplete((results, ex) -> {
+            try {
+                if (ex != null) {
+                    emitter.completeWithError(ex);
+                    return;
+                }
+                emitter.send(SseEmitter.event().name("done").data(toResponse(results, dedupe)));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    private static Map<String, Object> toResponse(List<SearchService.SourceResult> results, boolean dedupe) {
+        Map<String, Object> sources = new LinkedHashMap<>();
+        for (SearchService.SourceResult r : results) {
+            sources.put(r.source, r.summary());
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("tracks", SearchService.merge(results, dedupe));
+        data.put("sources", sources);
+        return data;
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.min(Math.max(limit, 1), 50);
+    }
+}
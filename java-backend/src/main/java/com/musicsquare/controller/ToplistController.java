@@ -0,0 +1,45 @@
+package com.musicsquare.controller;
+
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.service.SearchService;
+import com.musicsquare.service.ToplistWarmer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/toplists")
+@CrossOrigin(origins = "*")
+public class ToplistController {
+
+    @Autowired
+    private ToplistWarmer toplistWarmer;
+
+    @GetMapping
+    public ApiResponse getList(@RequestParam("source") String source) {
+        if (!SearchService.SOURCES.contains(source)) {
+            return ApiResponse.error("Unsupported platform: " + source);
+        }
+        try {
+            return ApiResponse.success(toplistWarmer.getList(source));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/{source}/{id}")
+    public ApiResponse getDetail(@PathVariable("source") String source, @PathVariable("id") String id) {
+        if (!SearchService.SOURCES.contains(source)) {
+            return ApiResponse.error("Unsupported platform: " + source);
+        }
+        try {
+            return ApiResponse.success(toplistWarmer.getDetail(source, id));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(toplistWarmer.stats());
+    }
+}
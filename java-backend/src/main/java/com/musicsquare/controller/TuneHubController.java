@@ -1,10 +1,17 @@
 package com.musicsquare.controller;
 
+import com.musicsquare.cache.UpstreamResponseCache;
+import com.musicsquare.config.ResponseCacheProperties;
 import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.resilience.UpstreamUnavailableException;
+import com.musicsquare.service.TuneHubService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -12,7 +19,17 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class TuneHubController {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private TuneHubService tuneHubService;
+
+    @Autowired
+    private UpstreamResponseCache responseCache;
+
+    @Value("${music.parse.batch.max-items:500}")
+    private int batchMaxItems;
 
     @PostMapping("/request")
     public ApiResponse proxyRequest(@RequestBody Map<String, Object> body) {
@@ -32,9 +49,18 @@ public class TuneHubController {
                 customHeaders.forEach(headers::set);
             }
 
-            HttpEntity<Object> entity = new HttpEntity<>(data, headers);
             HttpMethod httpMethod = HttpMethod.valueOf(method.toUpperCase());
 
+            // Idempotent GETs to hosts with a cache rule (toplists, playlist details) are
+            // answered from the response cache; callers can opt out with "cache": false.
+            ResponseCacheProperties.Rule rule = Boolean.FALSE.equals(body.get("cache"))
+                    ? null : responseCache.ruleFor(targetUrl, httpMethod);
+            if (rule != null) {
+                return ApiResponse.success(responseCache.get(targetUrl, headers, rule));
+            }
+
+            HttpEntity<Object> entity = new HttpEntity<>(data, headers);
+
             // Handle binary response or json response? 
             // The usage in api.js expects JSON mostly, but let's return Object/Map
             // QQ returns JSONP or JSON, Kuwo returns JSON or text.
@@ -57,6 +83,9 @@ public class TuneHubController {
             // Simple string return:
             return ApiResponse.success(response.getBody());
 
+        } catch (UpstreamUnavailableException e) {
+            // Fast-fail from the breaker / limiter; the frontend falls back to other sources.
+            return ApiResponse.error("Upstream unavailable: " + e.getMessage());
         } catch (Exception e) {
             return ApiResponse.error("Proxy error: " + e.getMessage());
         }
@@ -66,49 +95,28 @@ public class TuneHubController {
     public ApiResponse parseSong(@RequestBody Map<String, Object> body) {
         String platform = (String) body.get("platform");
         String id = (String) body.get("ids"); // api.js uses 'ids'
-        // String quality = (String) body.get("quality");
-
-        if ("netease".equals(platform)) {
-             try {
-                // Proxy to Netease Cloud Music API (public instance)
-                // You might want to make this configurable in application.properties
-                 String url = "https://netease-cloud-music-api-eight-rho.vercel.app/song/url?id=" + id;
-                 Map res = restTemplate.getForObject(url, Map.class);
-                 if (res != null && res.get("data") != null) {
-                     return ApiResponse.success(Map.of("data", res.get("data")));
-                 }
-             } catch (Exception e) {
-                 e.printStackTrace();
-             }
-        } else if ("kuwo".equals(platform)) {
-            // Simple fallback for Kuwo
-             try {
-                 String url = "http://www.kuwo.cn/api/v1/www/music/playUrl?mid=" + id + "&type=music&httpsStatus=1";
-                 ResponseEntity<String> res = restTemplate.exchange(url, HttpMethod.GET, 
-                    new HttpEntity<>(new HttpHeaders() {{ set("User-Agent", "Mozilla/5.0"); }}), String.class);
-                 
-                 // Kuwo returns: { "code": 200, "msg": "success", "data": { "url": "..." } }
-                 // We need to wrap it so api.js sees json.data.url
-                 // Since we return ApiResponse, api.js sees { success:true, data: { ... } }
-                 // api.js expects json.data.url or json.data.data[0].url
-                 
-                 // If we return the raw Kuwo response map as 'data':
-                 // api.js sees: res.data = { code:200, data: { url: ... } }
-                 // api.js checks: json.data.url? No. json.data.data? Yes.
-                 // api.js checks `res.data.data[0]`? No.
-                 // So we need to ensure the structure aligns.
-                 
-                 // Best is to standardize: return { url: "..." } in our data.
-                 
-                 return ApiResponse.success(Map.of("url", "http://antiserver.kuwo.cn/anti.s?format=mp3&rid=MUSIC_" + id + "&response=url&type=convert_url3")); 
-                 // Using the older stable API for fallback if the complex one fails?
-                 // Or stick to the one proposed?
-             } catch (Exception e) {
-                 // ignore
-             }
+        String quality = (String) body.get("quality");
+
+        return ApiResponse.success(tuneHubService.parse(platform, id, quality));
+    }
+
+    @PostMapping("/parse/batch")
+    public ApiResponse parseBatch(@RequestBody Map<String, Object> body) {
+        List<Map<String, Object>> items = (List<Map<String, Object>>) body.get("items");
+        String quality = (String) body.get("quality");
+        if (items == null) {
+            return ApiResponse.error("Missing items parameter");
+        }
+        if (items.size() > batchMaxItems) {
+            return ApiResponse.error("Too many items (max " + batchMaxItems + ")");
         }
+        return ApiResponse.success(Map.of("results", tuneHubService.parseBatch(items, quality)));
+    }
 
-        // Fallback or empty
-        return ApiResponse.success(Map.of("url", ""));
+    @GetMapping("/stats")
+    public ApiResponse stats() {
+        return ApiResponse.success(Map.of(
+                "parseCache", tuneHubService.parseCacheStats(),
+                "responseCache", responseCache.stats()));
     }
 }
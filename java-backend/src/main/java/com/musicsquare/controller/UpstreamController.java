@@ -0,0 +1,48 @@
+package com.musicsquare.controller;
+
+import com.musicsquare.dto.ApiResponse;
+import com.musicsquare.resilience.UpstreamGuard;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/upstream")
+@CrossOrigin(origins = "*")
+public class UpstreamController {
+
+    @Autowired
+    private PoolingHttpClientConnectionManager upstreamConnectionManager;
+
+    @Autowired
+    private UpstreamGuard upstreamGuard;
+
+    @GetMapping("/stats")
+    public ApiResponse stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pool", toMap(upstreamConnectionManager.getTotalStats()));
+
+        Map<String, Object> hosts = new LinkedHashMap<>();
+        for (HttpRoute route : upstreamConnectionManager.getRoutes()) {
+            hosts.put(route.getTargetHost().toURI(), toMap(upstreamConnectionManager.getStats(route)));
+        }
+        result.put("hosts", hosts);
+        // Breaker state and concurrency limit per host that has been called so far.
+        result.put("guards", upstreamGuard.stats());
+        return ApiResponse.success(result);
+    }
+
+    private static Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("available", stats.getAvailable());
+        map.put("pending", stats.getPending());
+        map.put("max", stats.getMax());
+        return map;
+    }
+}
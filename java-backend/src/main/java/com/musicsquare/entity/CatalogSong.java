@@ -0,0 +1,14 @@
+package com.musicsquare.entity;
+
+/**
+ * A row that points at a song in the shared songs catalog. Its song_json column is only
+ * filled for rows written before the catalog existed; for the rest the payload is loaded
+ * from the catalog by song_ref (see SongCatalogRepository#hydrate).
+ */
+public interface CatalogSong {
+    Long getSongRef();
+
+    String getSongJson();
+
+    void setSongJson(String songJson);
+}
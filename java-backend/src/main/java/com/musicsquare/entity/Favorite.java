@@ -5,8 +5,12 @@ import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "favorites")
-public class Favorite {
+@Table(name = "favorites", uniqueConstraints = @UniqueConstraint(
+        name = "uk_favorites_user_song", columnNames = { "user_id", "song_id" }),
+        indexes = {
+                @Index(name = "idx_favorites_user_created", columnList = "user_id, created_at, id"),
+                @Index(name = "idx_favorites_song_ref", columnList = "song_ref") })
+public class Favorite implements CatalogSong {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -14,9 +18,16 @@ public class Favorite {
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    @Column(name = "song_json", columnDefinition = "TEXT", nullable = false)
+    // The track's "id" from song_json, stored so lookups use the unique index instead of JSON_EXTRACT.
+    @Column(name = "song_id", length = 191)
+    private String songId;
+
+    @Column(name = "song_json", columnDefinition = "TEXT", insertable = false, updatable = false)
     private String songJson;
 
+    @Column(name = "song_ref")
+    private Long songRef;
+
     @Column(name = "created_at")
     private Long createdAt;
 }
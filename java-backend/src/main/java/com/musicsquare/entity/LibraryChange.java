@@ -0,0 +1,46 @@
+package com.musicsquare.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One entry of a user's library change log: which item of which kind was inserted, updated
+ * or deleted at which version. Only the item's identity is logged; its current content is
+ * read when the change is served. Written and read by LibraryChangeRepository.
+ */
+@Data
+@Entity
+@Table(name = "library_changes", indexes = {
+        @Index(name = "idx_library_changes_user_version", columnList = "user_id, version"),
+        @Index(name = "idx_library_changes_user_item", columnList = "user_id, kind, item_key, version"),
+        @Index(name = "idx_library_changes_created", columnList = "created_at") })
+public class LibraryChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long version;
+
+    // playlist, track, favorite or history
+    @Column(nullable = false, length = 16)
+    private String kind;
+
+    // insert, update or delete
+    @Column(nullable = false, length = 8)
+    private String op;
+
+    // Playlist id, track uid, favorite song id or history id.
+    @Column(name = "item_key", nullable = false, length = 191)
+    private String itemKey;
+
+    // Playlist id of a track.
+    @Column(name = "parent_id")
+    private Long parentId;
+
+    @Column(name = "created_at")
+    private Long createdAt;
+}
@@ -0,0 +1,33 @@
+package com.musicsquare.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Change counters of one user's library. {@code version} is the latest change-log version,
+ * the per-view versions are the latest version that touched that view (they back the ETags
+ * of the list endpoints), and changes up to {@code minVersion} may have been compacted away.
+ */
+@Data
+@Entity
+@Table(name = "library_versions")
+public class LibraryVersion {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long version = 0L;
+
+    @Column(name = "playlists_version", nullable = false)
+    private Long playlistsVersion = 0L;
+
+    @Column(name = "favorites_version", nullable = false)
+    private Long favoritesVersion = 0L;
+
+    @Column(name = "history_version", nullable = false)
+    private Long historyVersion = 0L;
+
+    @Column(name = "min_version", nullable = false)
+    private Long minVersion = 0L;
+}
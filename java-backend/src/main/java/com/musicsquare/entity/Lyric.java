@@ -0,0 +1,23 @@
+package com.musicsquare.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Data
+@Entity
+@Table(name = "lyrics")
+public class Lyric {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // "netease:<id>", "kuwo:<id>" or "url:<lrc url>"
+    @Column(name = "cache_key", unique = true, nullable = false, length = 512)
+    private String cacheKey;
+
+    @Column(name = "lines_json", columnDefinition = "MEDIUMTEXT", nullable = false)
+    private String linesJson;
+
+    @Column(name = "created_at")
+    private Long createdAt;
+}
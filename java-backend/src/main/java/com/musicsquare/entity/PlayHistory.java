@@ -5,8 +5,10 @@ import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "play_history")
-public class PlayHistory {
+@Table(name = "play_history", indexes = {
+        @Index(name = "idx_play_history_user_played", columnList = "user_id, played_at, id"),
+        @Index(name = "idx_play_history_song_ref", columnList = "song_ref") })
+public class PlayHistory implements CatalogSong {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -14,9 +16,14 @@ public class PlayHistory {
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    @Column(name = "song_json", columnDefinition = "TEXT", nullable = false)
+    // Payload of rows written before the songs catalog; newer rows only have song_ref and get
+    // this filled from the catalog on read. Never written through JPA.
+    @Column(name = "song_json", columnDefinition = "TEXT", insertable = false, updatable = false)
     private String songJson;
 
+    @Column(name = "song_ref")
+    private Long songRef;
+
     @Column(name = "played_at")
     private Long playedAt;
 }
@@ -30,4 +30,8 @@ public class Playlist {
 
     @Column(name = "created_at")
     private Long createdAt;
+
+    // Fingerprint of the synced track list as of the last sync; equal lists skip the diff.
+    @Column(name = "tracks_fingerprint", length = 64)
+    private String tracksFingerprint;
 }
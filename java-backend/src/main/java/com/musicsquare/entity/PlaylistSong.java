@@ -5,8 +5,10 @@ import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "playlist_songs")
-public class PlaylistSong {
+@Table(name = "playlist_songs", indexes = {
+        @Index(name = "idx_playlist_songs_playlist", columnList = "playlist_id, position"),
+        @Index(name = "idx_playlist_songs_song_ref", columnList = "song_ref") })
+public class PlaylistSong implements CatalogSong {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -14,12 +16,29 @@ public class PlaylistSong {
     @Column(name = "playlist_id", nullable = false)
     private Long playlistId;
 
-    @Column(name = "song_json", columnDefinition = "TEXT", nullable = false)
+    // Read-only: set on pre-catalog rows, otherwise hydrated from songs via song_ref.
+    @Column(name = "song_json", columnDefinition = "TEXT", insertable = false, updatable = false)
     private String songJson;
 
+    @Column(name = "song_ref")
+    private Long songRef;
+
     @Column(name = "is_local_add")
     private Integer isLocalAdd = 0;
 
     @Column(name = "created_at")
     private Long createdAt;
+
+    // Tracks are listed by position descending: manual additions count up from the top,
+    // synced tracks count down from 0 in source order (see PlaylistDiffService).
+    @Column(name = "position")
+    private Long position;
+
+    // Stable identity of the track within a synced playlist (its "source-songId" id).
+    @Column(name = "song_key", length = 191)
+    private String songKey;
+
+    // SHA-256 of the canonical song_json; changes when the track's metadata changes.
+    @Column(name = "fingerprint", length = 64)
+    private String fingerprint;
 }
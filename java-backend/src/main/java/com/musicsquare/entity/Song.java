@@ -0,0 +1,34 @@
+package com.musicsquare.entity;
+
+import com.musicsquare.codec.SongPayloadConverter;
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One distinct song payload, shared by every playlist_songs, favorites and play_history row
+ * that stores the same JSON. Rows are immutable; they are written by SongCatalogRepository.
+ */
+@Data
+@Entity
+@Table(name = "songs", uniqueConstraints = @UniqueConstraint(name = "uk_songs_key", columnNames = "song_key"))
+public class Song {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 (hex) of the song JSON.
+    @Column(name = "song_key", length = 64, nullable = false)
+    private String songKey;
+
+    // The song JSON, stored encoded by SongPayloadCodec.
+    @Convert(converter = SongPayloadConverter.class)
+    @Column(name = "payload", columnDefinition = "MEDIUMBLOB")
+    private String payload;
+
+    // Plain JSON of rows from before payloads were encoded, moved into payload at startup.
+    @Column(name = "song_json", columnDefinition = "TEXT")
+    private String songJson;
+
+    @Column(name = "created_at")
+    private Long createdAt;
+}
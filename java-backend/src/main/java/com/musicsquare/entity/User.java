@@ -11,7 +11,8 @@ public class User {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(unique = true, nullable = false)
+    // UsernameFilter folds names to match this collation; keep the two in step.
+    @Column(unique = true, nullable = false, columnDefinition = "varchar(255) collate utf8mb4_unicode_ci")
     private String username;
 
     @Column(nullable = false)
@@ -0,0 +1,333 @@
+package com.musicsquare.repository;
+
+import com.musicsquare.entity.PlayHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * JDBC batch inserts for the tables that receive whole playlists at once.
+ *
+ * The entities use IDENTITY ids, which keeps Hibernate from batching inserts, so going through
+ * {@code save()} costs one round trip per row. Here rows are sent as JDBC batches of
+ * {@code chunkSize}; with {@code rewriteBatchedStatements=true} on the datasource URL the
+ * MySQL driver turns each batch into a single multi-row INSERT. Runs inside the caller's
+ * transaction: call {@code flush()} on the JPA repository first if it has pending changes
+ * for the same rows.
+ *
+ * Song payloads are not stored per row: each is resolved to its id in the songs catalog
+ * (see {@link SongCatalogRepository}) and only that song_ref is written.
+ */
+@Repository
+public class BulkWriteRepository {
+
+    private static final String INSERT_PLAYLIST_SONG =
+            "INSERT INTO playlist_songs (playlist_id, song_ref, is_local_add, created_at, position)"
+                    + " VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_SYNCED_SONG =
+            "INSERT INTO playlist_songs (playlist_id, song_ref, is_local_add, created_at, position, song_key,"
+                    + " fingerprint) VALUES (?, ?, 0, ?, ?, ?, ?)";
+
+    private static final String INSERT_PLAY_HISTORY =
+            "INSERT INTO play_history (user_id, song_ref, played_at) VALUES (?, ?, ?)";
+
+    private static final String UPDATE_SYNCED_SONG =
+            "UPDATE playlist_songs SET song_ref = ?, song_json = NULL, is_local_add = 0, song_key = ?, fingerprint = ?,"
+                    + " position = ? WHERE id = ?";
+
+    private static final String MOVE_SYNCED_SONG = "UPDATE playlist_songs SET position = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Value("${music.bulk-insert.chunk-size:500}")
+    private int chunkSize;
+
+    /** A synced track: its song_json plus the key and fingerprint the sync diff works on. */
+    public static final class SongRow {
+        public final String json;
+        public final String key;
+        public final String fingerprint;
+
+        public SongRow(String json, String key, String fingerprint) {
+            this.json = json;
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /** Position for a track added on top of the playlist: one above the highest in use, at least 1. */
+    public long nextPosition(Long playlistId) {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(position) FROM playlist_songs WHERE playlist_id = ?",
+                Long.class, playlistId);
+        return max == null ? 1 : Math.max(1, max + 1);
+    }
+
+    /**
+     * Inserts the songs in order on top of the playlist, each above the previous one, and returns
+     * their generated ids (the track "uid"s) in the same order.
+     */
+    public List<Long> insertPlaylistSongs(Long playlistId, List<String> songJsons, int isLocalAdd, long createdAt) {
+        return insertPlaylistSongs(playlistId, songJsons, isLocalAdd, createdAt, chunkSize);
+    }
+
+    public List<Long> insertPlaylistSongs(Long playlistId, List<String> songJsons, int isLocalAdd, long createdAt,
+            int chunkSize) {
+        List<Long> refs = songCatalogRepository.refsFor(songJsons);
+        long first = nextPosition(playlistId);
+        List<Integer> indexes = new ArrayList<>(refs.size());
+        for (int i = 0; i < refs.size(); i++) {
+            indexes.add(i);
+        }
+        return insertAll(INSERT_PLAYLIST_SONG, indexes, chunkSize, (ps, i) -> {
+            ps.setLong(1, playlistId);
+            ps.setLong(2, refs.get(i));
+            ps.setInt(3, isLocalAdd);
+            ps.setLong(4, createdAt);
+            ps.setLong(5, first + i);
+        });
+    }
+
+    /** Inserts synced tracks at the given positions (see PlaylistDiffService). */
+    public List<Long> insertSyncedSongs(Long playlistId, List<SongRow> rows, List<Long> positions, long createdAt) {
+        List<Long> refs = songCatalogRepository.refsFor(jsons(rows));
+        List<Integer> indexes = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            indexes.add(i);
+        }
+        return insertAll(INSERT_SYNCED_SONG, indexes, chunkSize, (ps, i) -> {
+            SongRow row = rows.get(i);
+            ps.setLong(1, playlistId);
+            ps.setLong(2, refs.get(i));
+            ps.setLong(3, createdAt);
+            ps.setLong(4, positions.get(i));
+            ps.setString(5, row.key);
+            ps.setString(6, row.fingerprint);
+        });
+    }
+
+    /** Rewrites existing rows in place (ids keep their uid), in batches of chunkSize. */
+    public void updateSyncedSongs(List<Long> ids, List<SongRow> rows, List<Long> positions) {
+        List<Long> refs = songCatalogRepository.refsFor(jsons(rows));
+        for (int from = 0; from < ids.size(); from += Math.max(1, chunkSize)) {
+            int to = Math.min(ids.size(), from + Math.max(1, chunkSize));
+            List<Object[]> args = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                SongRow row = rows.get(i);
+                args.add(new Object[] { refs.get(i), row.key, row.fingerprint, positions.get(i), ids.get(i) });
+            }
+            jdbcTemplate.batchUpdate(UPDATE_SYNCED_SONG, args);
+        }
+    }
+
+    /** Sets the position of rows whose content is unchanged but whose place in the source moved. */
+    public void moveSyncedSongs(List<Long> ids, List<Long> positions) {
+        for (int from = 0; from < ids.size(); from += Math.max(1, chunkSize)) {
+            int to = Math.min(ids.size(), from + Math.max(1, chunkSize));
+            List<Object[]> args = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                args.add(new Object[] { positions.get(i), ids.get(i) });
+            }
+            jdbcTemplate.batchUpdate(MOVE_SYNCED_SONG, args);
+        }
+    }
+
+    /** Deletes the given rows of one playlist with chunked IN lists; returns the number removed. */
+    public int deletePlaylistSongs(Long playlistId, List<Long> ids) {
+        int deleted = 0;
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < ids.size(); from += size) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + size));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = playlistId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            deleted += jdbcTemplate.update(
+                    "DELETE FROM playlist_songs WHERE playlist_id = ? AND id IN (" + placeholders + ")", args);
+        }
+        return deleted;
+    }
+
+    /**
+     * Adds the favorites the user does not have yet, in one multi-row statement per chunk, and
+     * returns the song ids this call inserted (each once). Rows whose (user_id, song_id) already
+     * exists are left as they are, so concurrent adds can neither create duplicates nor both
+     * report the same song as added. Must run inside a transaction (it uses a savepoint).
+     */
+    public List<String> upsertFavorites(Long userId, List<String> songIds, List<String> songJsons, long createdAt) {
+        // Songs already stored are skipped up front; the affected-row count of the insert then
+        // catches those a concurrent request added in between.
+        Set<String> existing = existingFavorites(userId, songIds);
+        List<String> newIds = new ArrayList<>();
+        List<String> newJsons = new ArrayList<>();
+        for (int i = 0; i < songIds.size(); i++) {
+            if (existing.add(songIds.get(i))) {
+                newIds.add(songIds.get(i));
+                newJsons.add(songJsons.get(i));
+            }
+        }
+        if (newIds.isEmpty()) {
+            return newIds;
+        }
+        List<Long> refs = songCatalogRepository.refsFor(newJsons);
+
+        // Insert in song_id order, so concurrent adds of overlapping songs take their key locks
+        // in the same order and wait for each other instead of deadlocking.
+        Integer[] order = new Integer[newIds.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(newIds::get));
+        List<String> sortedIds = new ArrayList<>(order.length);
+        List<Long> sortedRefs = new ArrayList<>(order.length);
+        for (int i : order) {
+            sortedIds.add(newIds.get(i));
+            sortedRefs.add(refs.get(i));
+        }
+
+        Set<String> inserted = new HashSet<>();
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < sortedIds.size(); from += size) {
+            int to = Math.min(sortedIds.size(), from + size);
+            inserted.addAll(insertFavoriteChunk(userId, sortedIds.subList(from, to), sortedRefs.subList(from, to),
+                    createdAt));
+        }
+        newIds.retainAll(inserted);
+        return newIds;
+    }
+
+    /**
+     * INSERT IGNORE counts exactly the rows it inserted, unlike "ON DUPLICATE KEY UPDATE id = id",
+     * which Connector/J (reporting found rows) counts as 1 for a duplicate as well. When the count
+     * falls short, a concurrent request has stored some of these songs since the check: the chunk
+     * is rolled back to a savepoint and inserted row by row, keeping only the rows that counted.
+     */
+    private List<String> insertFavoriteChunk(Long userId, List<String> ids, List<Long> refs, long createdAt) {
+        return jdbcTemplate.execute((ConnectionCallback<List<String>>) con -> {
+            Savepoint savepoint = con.setSavepoint();
+            String values = String.join(",", Collections.nCopies(ids.size(), "(?, ?, ?, ?)"));
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT IGNORE INTO favorites (user_id, song_id, song_ref, created_at) VALUES " + values)) {
+                int p = 1;
+                for (int i = 0; i < ids.size(); i++) {
+                    ps.setLong(p++, userId);
+                    ps.setString(p++, ids.get(i));
+                    ps.setLong(p++, refs.get(i));
+                    ps.setLong(p++, createdAt);
+                }
+                if (ps.executeUpdate() == ids.size()) {
+                    con.releaseSavepoint(savepoint);
+                    return ids;
+                }
+            }
+            con.rollback(savepoint);
+            List<String> inserted = new ArrayList<>();
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT IGNORE INTO favorites (user_id, song_id, song_ref, created_at) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < ids.size(); i++) {
+                    ps.setLong(1, userId);
+                    ps.setString(2, ids.get(i));
+                    ps.setLong(3, refs.get(i));
+                    ps.setLong(4, createdAt);
+                    if (ps.executeUpdate() == 1) {
+                        inserted.add(ids.get(i));
+                    }
+                }
+            }
+            return inserted;
+        });
+    }
+
+    private Set<String> existingFavorites(Long userId, List<String> songIds) {
+        Set<String> existing = new HashSet<>();
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < songIds.size(); from += size) {
+            List<String> chunk = songIds.subList(from, Math.min(songIds.size(), from + size));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = userId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            existing.addAll(jdbcTemplate.queryForList("SELECT song_id FROM favorites WHERE user_id = ? AND song_id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", String.class, args));
+        }
+        return existing;
+    }
+
+    /** Inserts buffered plays (entities not yet persisted) and returns their generated ids in order. */
+    public List<Long> insertPlayHistory(List<PlayHistory> rows) {
+        List<String> jsons = new ArrayList<>(rows.size());
+        for (PlayHistory h : rows) {
+            jsons.add(h.getSongJson());
+        }
+        List<Long> refs = songCatalogRepository.refsFor(jsons);
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setSongRef(refs.get(i));
+        }
+        return insertAll(INSERT_PLAY_HISTORY, rows, chunkSize, (ps, h) -> {
+            ps.setLong(1, h.getUserId());
+            ps.setLong(2, h.getSongRef());
+            ps.setLong(3, h.getPlayedAt());
+        });
+    }
+
+    private static List<String> jsons(List<SongRow> rows) {
+        List<String> jsons = new ArrayList<>(rows.size());
+        for (SongRow row : rows) {
+            jsons.add(row.json);
+        }
+        return jsons;
+    }
+
+    private interface RowBinder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+
+    private <T> List<Long> insertAll(String sql, List<T> rows, int chunkSize, RowBinder<T> binder) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        if (rows.isEmpty()) {
+            return ids;
+        }
+        int size = Math.max(1, chunkSize);
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < rows.size(); from += size) {
+                    int to = Math.min(rows.size(), from + size);
+                    for (int i = from; i < to; i++) {
+                        binder.bind(ps, rows.get(i));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            ids.add(keys.getLong(1));
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+        return ids;
+    }
+}
@@ -1,20 +1,31 @@
 package com.musicsquare.repository;
 
 import com.musicsquare.entity.Favorite;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
     List<Favorite> findByUserIdOrderByCreatedAtDesc(Long userId);
 
-    @Query(value = "SELECT * FROM favorites WHERE user_id = ?1 AND JSON_EXTRACT(song_json, '$.id') = ?2", nativeQuery = true)
     Optional<Favorite> findByUserIdAndSongId(Long userId, String songId);
 
+    List<Favorite> findByUserIdAndSongIdIn(Long userId, Collection<String> songIds);
+
+    // Keyset page in (created_at DESC, id DESC) order, on idx_favorites_user_created.
+    @Query("SELECT f FROM Favorite f WHERE f.userId = ?1 AND f.createdAt <= ?2"
+            + " AND (f.createdAt < ?2 OR f.id < ?3) ORDER BY f.createdAt DESC, f.id DESC")
+    List<Favorite> findPageAfter(Long userId, Long createdAt, Long id, Pageable pageable);
+
     @Modifying
-    @Query(value = "DELETE FROM favorites WHERE user_id = ?1 AND JSON_EXTRACT(song_json, '$.id') = ?2", nativeQuery = true)
-    void deleteByUserIdAndSongId(Long userId, String songId);
-}
+    @Query("DELETE FROM Favorite f WHERE f.userId = ?1 AND f.songId = ?2")
+    int deleteByUserIdAndSongId(Long userId, String songId);
 
+    @Modifying
+    @Query("DELETE FROM Favorite f WHERE f.userId = ?1 AND f.songId IN ?2")
+    int deleteByUserIdAndSongIdIn(Long userId, Collection<String> songIds);
+}
@@ -0,0 +1,144 @@
+package com.musicsquare.repository;
+
+import com.musicsquare.entity.LibraryChange;
+import com.musicsquare.entity.LibraryVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access to the library change log (library_changes) and the per-user counters
+ * (library_versions).
+ *
+ * {@link #append} must run inside a transaction: it takes the user's library_versions row
+ * lock for the version numbers and holds it until commit, so a user's changes commit in
+ * version order and a reader never sees version n + 1 before version n.
+ */
+@Repository
+public class LibraryChangeRepository {
+
+    private static final RowMapper<LibraryChange> CHANGE = (rs, i) -> {
+        LibraryChange c = new LibraryChange();
+        c.setId(rs.getLong(1));
+        c.setUserId(rs.getLong(2));
+        c.setVersion(rs.getLong(3));
+        c.setKind(rs.getString(4));
+        c.setOp(rs.getString(5));
+        c.setItemKey(rs.getString(6));
+        long parent = rs.getLong(7);
+        c.setParentId(rs.wasNull() ? null : parent);
+        c.setCreatedAt(rs.getLong(8));
+        return c;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Gives the changes consecutive versions after the user's current one, stores them and
+     * raises the listed view counters (column names of library_versions) to the new version.
+     * Returns that version.
+     */
+    public long append(Long userId, List<LibraryChange> changes, Collection<String> viewColumns) {
+        // MySQL applies single-table SET assignments left to right, so the view columns get
+        // the already incremented version.
+        StringBuilder sql = new StringBuilder("UPDATE library_versions SET version = version + ?");
+        for (String column : viewColumns) {
+            sql.append(", ").append(column).append(" = version");
+        }
+        sql.append(" WHERE user_id = ?");
+        if (jdbcTemplate.update(sql.toString(), changes.size(), userId) == 0) {
+            jdbcTemplate.update("INSERT IGNORE INTO library_versions"
+                    + " (user_id, version, playlists_version, favorites_version, history_version, min_version)"
+                    + " VALUES (?, 0, 0, 0, 0, 0)", userId);
+            jdbcTemplate.update(sql.toString(), changes.size(), userId);
+        }
+        long last = jdbcTemplate.queryForObject("SELECT version FROM library_versions WHERE user_id = ? FOR UPDATE",
+                Long.class, userId);
+
+        long version = last - changes.size();
+        long now = System.currentTimeMillis();
+        List<Object[]> args = new ArrayList<>(changes.size());
+        for (LibraryChange c : changes) {
+            c.setUserId(userId);
+            c.setVersion(++version);
+            c.setCreatedAt(now);
+            args.add(new Object[] { userId, c.getVersion(), c.getKind(), c.getOp(), c.getItemKey(), c.getParentId(),
+                    now });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO library_changes"
+                + " (user_id, version, kind, op, item_key, parent_id, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)", args);
+        return last;
+    }
+
+    /** The user's counters; all zero for a user without any logged change. */
+    public LibraryVersion versions(Long userId) {
+        List<LibraryVersion> rows = jdbcTemplate.query("SELECT version, playlists_version, favorites_version,"
+                + " history_version, min_version FROM library_versions WHERE user_id = ?", (rs, i) -> {
+                    LibraryVersion v = new LibraryVersion();
+                    v.setUserId(userId);
+                    v.setVersion(rs.getLong(1));
+                    v.setPlaylistsVersion(rs.getLong(2));
+                    v.setFavoritesVersion(rs.getLong(3));
+                    v.setHistoryVersion(rs.getLong(4));
+                    v.setMinVersion(rs.getLong(5));
+                    return v;
+                }, userId);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
+        }
+        LibraryVersion v = new LibraryVersion();
+        v.setUserId(userId);
+        return v;
+    }
+
+    /** Up to {@code limit} changes after {@code since}, oldest first. */
+    public List<LibraryChange> findSince(Long userId, long since, int limit) {
+        return jdbcTemplate.query("SELECT id, user_id, version, kind, op, item_key, parent_id, created_at"
+                + " FROM library_changes WHERE user_id = ? AND version > ? ORDER BY version LIMIT ?",
+                CHANGE, userId, since, limit);
+    }
+
+    /**
+     * Deletes every change that has a later change of the same item. Changes are served with
+     * the item's current content, so the latest one per item says all the earlier ones did.
+     */
+    public int coalesce(Long userId) {
+        return jdbcTemplate.update("DELETE c FROM library_changes c JOIN library_changes n"
+                + " ON n.user_id = c.user_id AND n.kind = c.kind AND n.item_key = c.item_key AND n.version > c.version"
+                + " WHERE c.user_id = ?", userId);
+    }
+
+    /** Version of the user's change {@code offset} places before the newest, or null if there are not that many. */
+    public Long versionAtOffset(Long userId, int offset) {
+        List<Long> rows = jdbcTemplate.queryForList("SELECT version FROM library_changes WHERE user_id = ?"
+                + " ORDER BY version DESC LIMIT 1 OFFSET ?", Long.class, userId, offset);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Per user, the newest version among changes logged before {@code createdBefore}. */
+    public Map<Long, Long> expiredUpTo(long createdBefore) {
+        Map<Long, Long> result = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT user_id, MAX(version) FROM library_changes WHERE created_at < ? GROUP BY user_id",
+                (RowCallbackHandler) rs -> result.put(rs.getLong(1), rs.getLong(2)), createdBefore);
+        return result;
+    }
+
+    /**
+     * Drops the user's changes up to {@code version}. min_version is raised first, so a reader
+     * that misses the deleted rows always sees that it has to resync.
+     */
+    public int truncate(Long userId, long version) {
+        jdbcTemplate.update("UPDATE library_versions SET min_version = GREATEST(min_version, ?) WHERE user_id = ?",
+                version, userId);
+        return jdbcTemplate.update("DELETE FROM library_changes WHERE user_id = ? AND version <= ?", userId, version);
+    }
+}
@@ -0,0 +1,9 @@
+package com.musicsquare.repository;
+
+import com.musicsquare.entity.Lyric;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Optional;
+
+public interface LyricRepository extends JpaRepository<Lyric, Long> {
+    Optional<Lyric> findByCacheKey(String cacheKey);
+}
@@ -3,11 +3,24 @@ package com.musicsquare.repository;
 import com.musicsquare.entity.PlayHistory;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 
 public interface PlayHistoryRepository extends JpaRepository<PlayHistory, Long> {
     List<PlayHistory> findByUserIdOrderByPlayedAtDesc(Long userId, Pageable pageable);
 
+    // Keyset page: rows after (playedAt, id) in (played_at DESC, id DESC) order. Written as
+    // "<= AND (< OR <)" so MySQL range-scans idx_play_history_user_played from the cursor.
+    @Query("SELECT h FROM PlayHistory h WHERE h.userId = ?1 AND h.playedAt <= ?2"
+            + " AND (h.playedAt < ?2 OR h.id < ?3) ORDER BY h.playedAt DESC, h.id DESC")
+    List<PlayHistory> findPageAfter(Long userId, Long playedAt, Long id, Pageable pageable);
+
     void deleteByUserIdAndId(Long userId, Long id);
+
+    @Modifying
+    @Query("DELETE FROM PlayHistory h WHERE h.userId = ?1 AND h.id IN ?2")
+    int deleteByUserIdAndIdIn(Long userId, Collection<Long> ids);
 }
 
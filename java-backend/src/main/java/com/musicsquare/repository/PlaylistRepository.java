@@ -2,6 +2,9 @@ package com.musicsquare.repository;
 
 import com.musicsquare.entity.Playlist;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,4 +12,10 @@ public interface PlaylistRepository extends JpaRepository<Playlist, Long> {
     List<Playlist> findByUserIdOrderByCreatedAtDesc(Long userId);
 
     Optional<Playlist> findByUserIdAndPlatformAndExternalId(Long userId, String platform, String externalId);
+
+    // Forces the next sync of this playlist to run the full diff; called on every manual edit.
+    @Transactional
+    @Modifying
+    @Query("UPDATE Playlist p SET p.tracksFingerprint = NULL WHERE p.id = ?1")
+    void clearTracksFingerprint(Long playlistId);
 }
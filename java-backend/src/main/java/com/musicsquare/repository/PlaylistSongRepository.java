@@ -1,16 +1,44 @@
 package com.musicsquare.repository;
 
 import com.musicsquare.entity.PlaylistSong;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 
 public interface PlaylistSongRepository extends JpaRepository<PlaylistSong, Long> {
-    List<PlaylistSong> findByPlaylistIdOrderByCreatedAtDesc(Long playlistId);
+    List<PlaylistSong> findByPlaylistIdOrderByPositionDescIdDesc(Long playlistId);
+
+    List<PlaylistSong> findByPlaylistId(Long playlistId);
+
+    Page<PlaylistSong> findByPlaylistIdOrderByPositionDescIdDesc(Long playlistId, Pageable pageable);
+
+    // Keyset page in (position DESC, id DESC) order. InnoDB appends the primary key to
+    // idx_playlist_songs_playlist, so it already covers (playlist_id, position, id).
+    @Query("SELECT ps FROM PlaylistSong ps WHERE ps.playlistId = ?1 AND ps.position <= ?2"
+            + " AND (ps.position < ?2 OR ps.id < ?3) ORDER BY ps.position DESC, ps.id DESC")
+    List<PlaylistSong> findPageAfter(Long playlistId, Long position, Long id, Pageable pageable);
+
+    // [playlistId, count] for each non-empty playlist of the user, in one aggregate query.
+    @Query("SELECT ps.playlistId, COUNT(ps) FROM PlaylistSong ps WHERE ps.playlistId IN"
+            + " (SELECT p.id FROM Playlist p WHERE p.userId = ?1) GROUP BY ps.playlistId")
+    List<Object[]> countByUserId(Long userId);
+
+    List<PlaylistSong> findByPlaylistIdAndIsLocalAdd(Long playlistId, Integer isLocalAdd);
 
     void deleteByPlaylistId(Long playlistId);
 
     void deleteByPlaylistIdAndId(Long playlistId, Long id);
 
+    // Only deletes when the playlist belongs to the user, in the same statement.
+    @Modifying
+    @Query("DELETE FROM PlaylistSong ps WHERE ps.playlistId = ?1 AND ps.id IN ?3"
+            + " AND ps.playlistId IN (SELECT p.id FROM Playlist p WHERE p.userId = ?2)")
+    int deleteOwnedByIdIn(Long playlistId, Long userId, Collection<Long> ids);
+
     void deleteByPlaylistIdAndIsLocalAdd(Long playlistId, Integer isLocalAdd);
 }
 
@@ -0,0 +1,282 @@
+package com.musicsquare.repository;
+
+import com.musicsquare.cache.TtlCache;
+import com.musicsquare.codec.SongPayloadConverter;
+import com.musicsquare.entity.CatalogSong;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The shared songs catalog: every distinct song_json is stored once, keyed by its SHA-256,
+ * and playlist_songs / favorites / play_history point at it through song_ref.
+ *
+ * Payloads are stored encoded by {@link SongPayloadConverter}; rows written before that keep
+ * plain song_json until SongCatalogMigration converts them, and both are read.
+ *
+ * Catalog rows never change, so both directions are cached in memory: content hash to id for
+ * writes (a hot track is referenced without touching the database) and id to JSON, bounded
+ * by bytes, for reads. Misses are resolved with one statement per chunk. Inside a
+ * transaction the hash-to-id cache is only filled after commit, so a rollback cannot leave it
+ * pointing at a catalog row that was never stored.
+ *
+ * Rows nothing references any more are removed by SongCatalogCleaner. Existing rows are
+ * resolved with a shared lock, so its delete waits for a transaction that is about to
+ * reference one; rows it is about to delete are evicted from the caches first.
+ */
+@Repository
+public class SongCatalogRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SongPayloadConverter payloadConverter;
+
+    @Value("${music.songs.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${music.songs.ref-cache.max-entries:200000}")
+    private long refCacheEntries;
+
+    @Value("${music.songs.json-cache.max-bytes:67108864}")
+    private long jsonCacheBytes;
+
+    @Value("${music.songs.cache-ttl-seconds:86400}")
+    private long cacheTtlSeconds;
+
+    private TtlCache<String, Long> refCache;
+    private TtlCache<Long, String> jsonCache;
+
+    private final AtomicLong refMisses = new AtomicLong();
+    private final AtomicLong jsonMisses = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+
+    private static final String UNREFERENCED = " NOT EXISTS (SELECT 1 FROM playlist_songs p WHERE p.song_ref = s.id)"
+            + " AND NOT EXISTS (SELECT 1 FROM favorites f WHERE f.song_ref = s.id)"
+            + " AND NOT EXISTS (SELECT 1 FROM play_history h WHERE h.song_ref = s.id)";
+
+    @PostConstruct
+    public void init() {
+        refCache = new TtlCache<>(refCacheEntries, cacheTtlSeconds * 1000);
+        jsonCache = new TtlCache<>(jsonCacheBytes, cacheTtlSeconds * 1000,
+                (id, json) -> 64 + json.length() * 2L);
+    }
+
+    public Long refFor(String json) {
+        return refsFor(Collections.singletonList(json)).get(0);
+    }
+
+    /** Catalog ids for the payloads, in the same order (null for a null payload); adds the missing ones. */
+    public List<Long> refsFor(List<String> jsons) {
+        List<String> keys = new ArrayList<>(jsons.size());
+        Map<String, Long> ids = new HashMap<>();
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (String json : jsons) {
+            String key = json != null ? key(json) : null;
+            keys.add(key);
+            if (key == null || ids.containsKey(key) || missing.containsKey(key)) {
+                continue;
+            }
+            Long id = refCache.getIfPresent(key);
+            if (id != null) {
+                ids.put(key, id);
+            } else {
+                missing.put(key, json);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            refMisses.addAndGet(missing.size());
+            Map<String, Long> resolved = insertMissing(missing);
+            ids.putAll(resolved);
+            Runnable remember = () -> resolved.forEach((key, id) -> {
+                refCache.put(key, id);
+                jsonCache.put(id, missing.get(key));
+            });
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        remember.run();
+                    }
+                });
+            } else {
+                remember.run();
+            }
+        }
+
+        List<Long> refs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            refs.add(key != null ? ids.get(key) : null);
+        }
+        return refs;
+    }
+
+    /** Fills song_json on rows that only carry a song_ref, from the cache or one query per chunk of misses. */
+    public void hydrate(Collection<? extends CatalogSong> rows) {
+        Set<Long> missing = new LinkedHashSet<>();
+        for (CatalogSong row : rows) {
+            if (row.getSongJson() == null && row.getSongRef() != null) {
+                String json = jsonCache.getIfPresent(row.getSongRef());
+                if (json != null) {
+                    row.setSongJson(json);
+                } else {
+                    missing.add(row.getSongRef());
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        jsonMisses.addAndGet(missing.size());
+        Map<Long, String> loaded = new HashMap<>();
+        List<Long> ids = new ArrayList<>(missing);
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < ids.size(); from += size) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + size));
+            jdbcTemplate.query("SELECT id, payload, song_json FROM songs WHERE id IN (" + placeholders(chunk.size()) + ")",
+                    (RowCallbackHandler) rs -> loaded.put(rs.getLong(1), decode(rs.getBytes(2), rs.getString(3))),
+                    chunk.toArray());
+        }
+        loaded.forEach(jsonCache::put);
+        for (CatalogSong row : rows) {
+            if (row.getSongJson() == null && row.getSongRef() != null) {
+                row.setSongJson(loaded.get(row.getSongRef()));
+            }
+        }
+    }
+
+    /** The JSON of a catalog row from its payload column, or its legacy song_json. */
+    public String decode(byte[] payload, String legacyJson) {
+        return payload != null ? payloadConverter.convertToEntityAttribute(payload) : legacyJson;
+    }
+
+    /** Highest catalog id, 0 when the catalog is empty. */
+    public long maxId() {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM songs", Long.class);
+        return max != null ? max : 0L;
+    }
+
+    /**
+     * Rows with {@code fromId < id <= toId}, created before {@code createdBefore}, that no
+     * playlist song, favorite or play history row references, as id to song_key.
+     */
+    public Map<Long, String> findUnreferenced(long fromId, long toId, long createdBefore) {
+        Map<Long, String> rows = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT s.id, s.song_key FROM songs s WHERE s.id > ? AND s.id <= ? AND s.created_at < ? AND"
+                        + UNREFERENCED + " ORDER BY s.id",
+                (RowCallbackHandler) rs -> rows.put(rs.getLong(1), rs.getString(2)), fromId, toId, createdBefore);
+        return rows;
+    }
+
+    /** Drops the rows from both caches, so the next write of the same song looks it up in the table. */
+    public void evict(Map<Long, String> rows) {
+        rows.forEach((id, key) -> {
+            refCache.invalidate(key);
+            jsonCache.invalidate(id);
+        });
+    }
+
+    /** Deletes those of the given rows that are still unreferenced and returns how many went. */
+    public int deleteUnreferenced(Collection<Long> ids) {
+        List<Long> list = new ArrayList<>(ids);
+        int count = 0;
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < list.size(); from += size) {
+            List<Long> chunk = list.subList(from, Math.min(list.size(), from + size));
+            count += jdbcTemplate.update("DELETE s FROM songs s WHERE s.id IN (" + placeholders(chunk.size()) + ") AND"
+                    + UNREFERENCED, chunk.toArray());
+        }
+        deleted.addAndGet(count);
+        return count;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("inserted", inserted.get());
+        m.put("deleted", deleted.get());
+        m.put("refMisses", refMisses.get());
+        m.put("jsonMisses", jsonMisses.get());
+        m.put("refCache", refCache.stats());
+        m.put("jsonCache", jsonCache.stats());
+        return m;
+    }
+
+    private Map<String, Long> insertMissing(Map<String, String> missing) {
+        Map<String, Long> resolved = new HashMap<>();
+        List<String> keys = new ArrayList<>(missing.keySet());
+        long now = System.currentTimeMillis();
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < keys.size(); from += size) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + size));
+            resolve(chunk, resolved);
+            // Only keys not stored yet are inserted and counted; the affected-row count would
+            // also include existing keys, since the driver reports found rows.
+            List<String> absent = new ArrayList<>();
+            for (String key : chunk) {
+                if (!resolved.containsKey(key)) {
+                    absent.add(key);
+                }
+            }
+            if (absent.isEmpty()) {
+                continue;
+            }
+            Object[] args = new Object[absent.size() * 3];
+            int a = 0;
+            for (String key : absent) {
+                args[a++] = key;
+                args[a++] = payloadConverter.convertToDatabaseColumn(missing.get(key));
+                args[a++] = now;
+            }
+            // A key stored concurrently in between is left alone; the SELECT below picks up its id either way.
+            jdbcTemplate.update("INSERT INTO songs (song_key, payload, created_at) VALUES "
+                    + String.join(",", Collections.nCopies(absent.size(), "(?, ?, ?)"))
+                    + " ON DUPLICATE KEY UPDATE id = id", args);
+            inserted.addAndGet(absent.size());
+            resolve(absent, resolved);
+        }
+        return resolved;
+    }
+
+    private void resolve(List<String> keys, Map<String, Long> resolved) {
+        // The shared lock holds off SongCatalogCleaner until the caller's reference is committed.
+        jdbcTemplate.query("SELECT id, song_key FROM songs WHERE song_key IN (" + placeholders(keys.size()) + ")"
+                        + " LOCK IN SHARE MODE",
+                (RowCallbackHandler) rs -> resolved.put(rs.getString(2), rs.getLong(1)), keys.toArray());
+    }
+
+    private static String placeholders(int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    public static String key(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
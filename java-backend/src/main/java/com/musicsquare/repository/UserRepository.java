@@ -7,5 +7,7 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
 
+    boolean existsByUsername(String username);
+
     Optional<User> findByUsernameAndPassword(String username, String password);
 }
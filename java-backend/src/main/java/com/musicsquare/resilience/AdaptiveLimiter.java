@@ -0,0 +1,78 @@
+package com.musicsquare.resilience;
+
+import com.musicsquare.config.UpstreamProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limit for one host.
+ *
+ * Each successful call that found the limit at least half used raises it by 1/limit, i.e.
+ * roughly +1 per round of calls. A failure or a call slower than {@code slowCallMs}
+ * multiplies it by {@code backoffRatio}, at most once per {@code backoffIntervalMs}.
+ */
+final class AdaptiveLimiter {
+
+    private final UpstreamProperties.Limiter config;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double limit;
+    private int inFlight;
+    private long lastBackoff;
+
+    private long rejected;
+    private long backoffs;
+
+    AdaptiveLimiter(UpstreamProperties.Limiter config) {
+        this.config = config;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+    }
+
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                rejected++;
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(boolean failure, long latencyMs, long now) {
+        lock.lock();
+        try {
+            int used = inFlight--;
+            if (failure || latencyMs > config.getSlowCallMs()) {
+                if (now - lastBackoff >= config.getBackoffIntervalMs()) {
+                    limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+                    lastBackoff = now;
+                    backoffs++;
+                }
+            } else if (used * 2 >= (int) limit) {
+                limit = Math.min(config.getMaxLimit(), limit + 1.0 / limit);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("limit", (int) limit);
+            m.put("inFlight", inFlight);
+            m.put("rejected", rejected);
+            m.put("backoffs", backoffs);
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.musicsquare.resilience;
+
+import com.musicsquare.config.UpstreamProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-based circuit breaker for one host.
+ *
+ * CLOSED records the outcome of the last {@code windowSize} calls and opens once the failure
+ * rate reaches the threshold. OPEN rejects everything for {@code openSeconds}, then turns
+ * HALF_OPEN and admits a few probe calls: if they all succeed the breaker closes, the first
+ * failing probe opens it again.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    enum Admission { REJECTED, NORMAL, PROBE }
+
+    private final UpstreamProperties.Breaker config;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Ring buffer of recent outcomes (true = failure).
+    private final boolean[] window;
+    private int windowPos;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private long rejected;
+    private long opened;
+
+    CircuitBreaker(UpstreamProperties.Breaker config) {
+        this.config = config;
+        this.window = new boolean[Math.max(1, config.getWindowSize())];
+    }
+
+    Admission tryAcquire(long now) {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (now - openedAt < config.getOpenSeconds() * 1000) {
+                    rejected++;
+                    return Admission.REJECTED;
+                }
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= config.getHalfOpenProbes()) {
+                    rejected++;
+                    return Admission.REJECTED;
+                }
+                probesInFlight++;
+                return Admission.PROBE;
+            }
+            return Admission.NORMAL;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onResult(Admission admission, boolean failure, long now) {
+        lock.lock();
+        try {
+            if (admission == Admission.PROBE) {
+                // Probes admitted before a re-trip no longer count.
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                probesInFlight--;
+                if (failure) {
+                    trip(now);
+                } else if (++probeSuccesses >= config.getHalfOpenProbes()) {
+                    state = State.CLOSED;
+                    resetWindow();
+                }
+                return;
+            }
+            // Calls started before the breaker opened finish here; ignore them.
+            if (state != State.CLOSED) {
+                return;
+            }
+            if (windowCount == window.length) {
+                if (window[windowPos]) {
+                    windowFailures--;
+                }
+            } else {
+                windowCount++;
+            }
+            window[windowPos] = failure;
+            if (failure) {
+                windowFailures++;
+            }
+            windowPos = (windowPos + 1) % window.length;
+
+            if (windowCount >= config.getMinimumCalls()
+                    && windowFailures * 100L >= (long) config.getFailureRatePercent() * windowCount) {
+                trip(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Releases a probe slot that was admitted but never used. */
+    void cancelProbe() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && probesInFlight > 0) {
+                probesInFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Seconds until an open breaker starts probing; 0 when not open. */
+    long retryAfterSeconds(long now) {
+        lock.lock();
+        try {
+            if (state != State.OPEN) {
+                return 0;
+            }
+            long remaining = config.getOpenSeconds() * 1000 - (now - openedAt);
+            return Math.max(1, (remaining + 999) / 1000);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("state", state.name());
+            m.put("windowCalls", windowCount);
+            m.put("windowFailures", windowFailures);
+            m.put("failureRate", windowCount == 0 ? 0.0 : (double) windowFailures / windowCount);
+            m.put("opened", opened);
+            m.put("rejected", rejected);
+            if (state == State.OPEN) {
+                m.put("openedAt", openedAt);
+            }
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void trip(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        opened++;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowPos = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+    }
+}
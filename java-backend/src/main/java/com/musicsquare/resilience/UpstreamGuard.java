@@ -0,0 +1,124 @@
+package com.musicsquare.resilience;
+
+import com.musicsquare.config.UpstreamProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Circuit breaker and adaptive concurrency limit per upstream host.
+ *
+ * Every outbound call takes a {@link Permit} first and reports its outcome on it. A slow or
+ * failing platform then only fills its own limit and trips its own breaker, and requests for
+ * other platforms keep their worker threads.
+ */
+@Component
+public class UpstreamGuard {
+
+    @Autowired
+    private UpstreamProperties props;
+
+    private final ConcurrentHashMap<String, HostGuard> hosts = new ConcurrentHashMap<>();
+
+    private static final class HostGuard {
+        final CircuitBreaker breaker;
+        final AdaptiveLimiter limiter;
+
+        HostGuard(UpstreamProperties props) {
+            this.breaker = new CircuitBreaker(props.getBreaker());
+            this.limiter = new AdaptiveLimiter(props.getLimiter());
+        }
+    }
+
+    /** Admission for one call. Report exactly one outcome; later calls are ignored. */
+    public static final class Permit {
+        private static final Permit NONE = new Permit(null, null, false, 0);
+
+        private final HostGuard guard;
+        private final CircuitBreaker.Admission admission;
+        private final boolean limited;
+        private final long startedAt;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Permit(HostGuard guard, CircuitBreaker.Admission admission, boolean limited, long startedAt) {
+            this.guard = guard;
+            this.admission = admission;
+            this.limited = limited;
+            this.startedAt = startedAt;
+        }
+
+        public void success() {
+            complete(false);
+        }
+
+        public void failure() {
+            complete(true);
+        }
+
+        private void complete(boolean failure) {
+            if (guard == null || !done.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (admission != null) {
+                guard.breaker.onResult(admission, failure, now);
+            }
+            if (limited) {
+                guard.limiter.release(failure, now - startedAt, now);
+            }
+        }
+    }
+
+    public Permit acquire(URI uri) {
+        return uri.getHost() != null ? acquire(uri.getHost()) : Permit.NONE;
+    }
+
+    /**
+     * Admits a call to {@code host} or throws {@link UpstreamUnavailableException} right away
+     * when its breaker is open or its concurrency limit is used up.
+     */
+    public Permit acquire(String host) {
+        boolean breakerOn = props.getBreaker().isEnabled();
+        boolean limiterOn = props.getLimiter().isEnabled();
+        if (!breakerOn && !limiterOn) {
+            return Permit.NONE;
+        }
+        String key = host.toLowerCase(Locale.ROOT);
+        HostGuard guard = hosts.computeIfAbsent(key, k -> new HostGuard(props));
+        long now = System.currentTimeMillis();
+
+        CircuitBreaker.Admission admission = null;
+        if (breakerOn) {
+            admission = guard.breaker.tryAcquire(now);
+            if (admission == CircuitBreaker.Admission.REJECTED) {
+                throw new UpstreamUnavailableException(key, "circuit open", guard.breaker.retryAfterSeconds(now));
+            }
+        }
+        if (limiterOn && !guard.limiter.tryAcquire()) {
+            if (admission == CircuitBreaker.Admission.PROBE) {
+                // Hand the probe slot back without judging the host.
+                guard.breaker.cancelProbe();
+            }
+            throw new UpstreamUnavailableException(key, "concurrency limit", 1);
+        }
+        return new Permit(guard, admission, limiterOn, now);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new TreeMap<>();
+        hosts.forEach((host, guard) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("breaker", guard.breaker.stats());
+            m.put("limiter", guard.limiter.stats());
+            result.put(host, m);
+        });
+        return result;
+    }
+}
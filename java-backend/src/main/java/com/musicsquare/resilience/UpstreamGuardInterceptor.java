@@ -0,0 +1,43 @@
+package com.musicsquare.resilience;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Puts every {@code RestTemplate} call behind the {@link UpstreamGuard} of its host. I/O
+ * errors, 5xx and 429 count as failures; other 4xx mean the host is up and count as success.
+ */
+public class UpstreamGuardInterceptor implements ClientHttpRequestInterceptor {
+
+    private final UpstreamGuard guard;
+
+    public UpstreamGuardInterceptor(UpstreamGuard guard) {
+        this.guard = guard;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        UpstreamGuard.Permit permit = guard.acquire(request.getURI());
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            if (isFailure(response.getStatusCode().value())) {
+                permit.failure();
+            } else {
+                permit.success();
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            permit.failure();
+            throw e;
+        }
+    }
+
+    public static boolean isFailure(int status) {
+        return status >= 500 || status == 429;
+    }
+}
@@ -0,0 +1,25 @@
+package com.musicsquare.resilience;
+
+/**
+ * Thrown instead of calling a host whose circuit is open or whose concurrency limit is
+ * reached. Callers answer with a degraded response rather than waiting on the host.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private final String host;
+    private final long retryAfterSeconds;
+
+    public UpstreamUnavailableException(String host, String reason, long retryAfterSeconds) {
+        super(host + " unavailable (" + reason + ")");
+        this.host = host;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
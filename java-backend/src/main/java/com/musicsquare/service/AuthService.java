@@ -3,7 +3,9 @@ package com.musicsquare.service;
 import com.musicsquare.entity.User;
 import com.musicsquare.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import java.util.Map;
 import java.util.Optional;
 
 import java.security.MessageDigest;
@@ -17,6 +19,9 @@ public class AuthService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UsernameFilter usernameFilter;
+
     private String hashPassword(String password) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -27,17 +32,20 @@ public class AuthService {
         }
     }
 
+    /** Creates the user, or returns empty if the name is taken (decided by the unique index, not a prior lookup). */
     public Optional<User> register(String username, String password) {
-        if (userRepository.findByUsername(username).isPresent()) {
-            return Optional.empty();
-        }
         User user = new User();
         user.setUsername(username);
         user.setPassword(hashPassword(password));
         user.setAvatar("https://ui-avatars.com/api/?name=" + username + "&background=random");
         user.setCreatedAt(System.currentTimeMillis());
-        @SuppressWarnings("null")
-        User savedUser = userRepository.save(user);
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            return Optional.empty();
+        }
+        usernameFilter.add(username);
         return Optional.of(savedUser);
     }
 
@@ -51,11 +59,25 @@ public class AuthService {
             user.setUsername(username);
         if (avatar != null)
             user.setAvatar(avatar);
-        return userRepository.save(user);
+        // A name that is already taken fails on the unique index with DataIntegrityViolationException.
+        User saved = userRepository.saveAndFlush(user);
+        if (username != null) {
+            usernameFilter.add(username);
+        }
+        return saved;
     }
 
     public boolean checkUserExists(String username) {
-        return userRepository.findByUsername(username).isPresent();
+        if (!usernameFilter.mightExist(username)) {
+            return false;
+        }
+        boolean exists = userRepository.existsByUsername(username);
+        usernameFilter.recordLookup(exists);
+        return exists;
+    }
+
+    public Map<String, Object> usernameFilterStats() {
+        return usernameFilter.stats();
     }
 
     public boolean resetPassword(String username, String newPassword) {
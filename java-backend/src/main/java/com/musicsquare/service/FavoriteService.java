@@ -1,53 +1,113 @@
 package com.musicsquare.service;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.entity.Favorite;
+import com.musicsquare.repository.BulkWriteRepository;
 import com.musicsquare.repository.FavoriteRepository;
+import com.musicsquare.repository.SongCatalogRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class FavoriteService {
 
+    // Upper bound on ids per DELETE ... IN (...) statement.
+    private static final int DELETE_CHUNK = 1000;
+
     @Autowired
     private FavoriteRepository favoriteRepository;
 
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private SongJsonStreamer songJsonStreamer;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    /** Writes the user's favorites as a JSON array, from the library cache when possible. */
+    public void writeFavorites(Long userId, OutputStream out) throws IOException {
+        libraryCache.writeTo(userId, LibraryCache.View.FAVORITES, out,
+                buf -> songJsonStreamer.writeFavorites(userId, buf));
+    }
+
     public List<Favorite> getFavorites(Long userId) {
-        return favoriteRepository.findByUserIdOrderByCreatedAtDesc(userId);
+        List<Favorite> rows = favoriteRepository.findByUserIdOrderByCreatedAtDesc(userId);
+        songCatalogRepository.hydrate(rows);
+        return rows;
     }
 
+    /** Up to {@code size + 1} favorites after the cursor, newest first (see {@link KeysetCursor#page}). */
+    public List<Favorite> getFavoritesPage(Long userId, KeysetCursor cursor, int size) {
+        List<Favorite> rows = favoriteRepository.findPageAfter(userId, cursor.sortKey, cursor.id,
+                PageRequest.of(0, size + 1));
+        songCatalogRepository.hydrate(rows);
+        return rows;
+    }
+
+    @Transactional
     public void addFavorite(Long userId, String songJson, String songId) {
-        Optional<Favorite> existing = favoriteRepository.findByUserIdAndSongId(userId, songId);
-        if (existing.isEmpty()) {
-            Favorite fav = new Favorite();
-            fav.setUserId(userId);
-            fav.setSongJson(songJson);
-            fav.setCreatedAt(System.currentTimeMillis());
-            favoriteRepository.save(fav);
+        // Atomic against concurrent adds of the same song: the unique (user_id, song_id) key decides.
+        if (!bulkWriteRepository.upsertFavorites(userId, List.of(songId), List.of(songJson),
+                System.currentTimeMillis()).isEmpty()) {
+            libraryChangeService.record(userId, LibraryChangeService.FAVORITE, LibraryChangeService.INSERT, songId);
         }
     }
 
     @Transactional
     public void removeFavorite(Long userId, String songId) {
-        favoriteRepository.deleteByUserIdAndSongId(userId, songId);
+        if (favoriteRepository.deleteByUserIdAndSongId(userId, songId) > 0) {
+            libraryChangeService.record(userId, LibraryChangeService.FAVORITE, LibraryChangeService.DELETE, songId);
+        }
     }
 
+    /** Adds the songs not favorited yet and returns how many were new. */
     @Transactional
-    public void addBatchFavorites(Long userId, List<Map<String, String>> songs) {
-        // songs is list of {json, id}
+    public int addBatchFavorites(Long userId, List<Map<String, String>> songs) {
+        // songs is list of {json, id}; the first occurrence of an id in the batch wins
+        Set<String> seen = new LinkedHashSet<>();
+        List<String> ids = new ArrayList<>();
+        List<String> jsons = new ArrayList<>();
         for (Map<String, String> item : songs) {
-            addFavorite(userId, item.get("json"), item.get("id"));
+            if (item.get("id") != null && seen.add(item.get("id"))) {
+                ids.add(item.get("id"));
+                jsons.add(item.get("json"));
+            }
         }
+        List<String> added = bulkWriteRepository.upsertFavorites(userId, ids, jsons, System.currentTimeMillis());
+        libraryChangeService.record(userId, LibraryChangeService.FAVORITE, LibraryChangeService.INSERT, added, null);
+        return added.size();
     }
 
+    /** Removes the given songs with chunked IN deletes and returns how many rows went away. */
     @Transactional
-    public void removeBatchFavorites(Long userId, List<String> songIds) {
-        for (String sid : songIds) {
-            favoriteRepository.deleteByUserIdAndSongId(userId, sid);
+    public int removeBatchFavorites(Long userId, List<String> songIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(songIds));
+        int removed = 0;
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+            removed += favoriteRepository.deleteByUserIdAndSongIdIn(userId,
+                    ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK)));
+        }
+        if (removed > 0) {
+            libraryChangeService.record(userId, LibraryChangeService.FAVORITE, LibraryChangeService.DELETE, ids, null);
         }
+        return removed;
     }
 }
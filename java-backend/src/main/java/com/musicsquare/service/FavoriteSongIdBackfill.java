@@ -0,0 +1,72 @@
+package com.musicsquare.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills favorites.song_id for rows written before the column existed.
+ *
+ * Rows that would collide on (user_id, song_id) are removed first, keeping the row that
+ * already has a song_id or else the oldest one, then the column is filled in chunks. Finally
+ * the unique key is created if schema update could not add it. Rows whose payload has no
+ * $.id (or no payload at all) can never be filled and are left out, so once every other row
+ * has a song_id this is a single count query at startup and the dedupe does not run again.
+ */
+@Slf4j
+@Component
+@Order(1)
+public class FavoriteSongIdBackfill implements ApplicationRunner {
+
+    private static final String EXTRACTED_ID = "JSON_UNQUOTE(JSON_EXTRACT(%s.song_json, '$.id'))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${music.favorites.backfill-chunk:5000}")
+    private int chunk;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM favorites"
+                + " WHERE song_id IS NULL AND JSON_EXTRACT(song_json, '$.id') IS NOT NULL", Integer.class);
+        if (pending != null && pending > 0) {
+            backfill();
+        }
+        ensureUniqueKey();
+    }
+
+    private void backfill() {
+        String fId = String.format(EXTRACTED_ID, "f");
+        String gId = String.format(EXTRACTED_ID, "g");
+        int duplicates = jdbcTemplate.update("DELETE f FROM favorites f JOIN favorites g"
+                + " ON g.user_id = f.user_id AND g.id <> f.id"
+                + " AND COALESCE(g.song_id, " + gId + ") = " + fId
+                + " AND (g.song_id IS NOT NULL OR g.id < f.id)"
+                + " WHERE f.song_id IS NULL AND JSON_EXTRACT(f.song_json, '$.id') IS NOT NULL");
+
+        int filled = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update("UPDATE favorites SET song_id = " + String.format(EXTRACTED_ID, "favorites")
+                    + " WHERE song_id IS NULL AND JSON_EXTRACT(song_json, '$.id') IS NOT NULL LIMIT ?", chunk);
+            filled += updated;
+        } while (updated > 0);
+        log.info("favorites.song_id backfill: {} rows filled, {} duplicates removed", filled, duplicates);
+    }
+
+    private void ensureUniqueKey() {
+        Integer exists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = 'favorites'"
+                + " AND index_name = 'uk_favorites_user_song'", Integer.class);
+        if (exists == null || exists == 0) {
+            jdbcTemplate.execute(
+                    "ALTER TABLE favorites ADD CONSTRAINT uk_favorites_user_song UNIQUE (user_id, song_id)");
+        }
+    }
+}
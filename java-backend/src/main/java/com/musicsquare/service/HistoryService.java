@@ -1,21 +1,76 @@
 package com.musicsquare.service;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.entity.PlayHistory;
 import com.musicsquare.repository.PlayHistoryRepository;
+import com.musicsquare.repository.SongCatalogRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class HistoryService {
 
+    // Upper bound on ids per DELETE ... IN (...) statement.
+    private static final int DELETE_CHUNK = 1000;
+
     @Autowired
     private PlayHistoryRepository playHistoryRepository;
 
+    @Autowired
+    private HistoryWriteBuffer historyWriteBuffer;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private SongJsonStreamer songJsonStreamer;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** Writes the user's latest {@code limit} plays as a JSON array, from the library cache when possible. */
+    public void writeHistory(Long userId, int limit, OutputStream out) throws IOException {
+        // Plays still waiting in the write-behind buffer must show up in this response.
+        historyWriteBuffer.flushUser(userId);
+        libraryCache.writeTo(userId, LibraryCache.View.HISTORY, out,
+                buf -> songJsonStreamer.writeHistory(userId, limit, buf));
+    }
+
+    /** Writes the user's buffered plays, for readers that look at play_history (or its versions) directly. */
+    public void flushPending(Long userId) {
+        historyWriteBuffer.flushUser(userId);
+    }
+
     public List<PlayHistory> getHistory(Long userId) {
-        return playHistoryRepository.findByUserIdOrderByPlayedAtDesc(userId, PageRequest.of(0, 100));
+        historyWriteBuffer.flushUser(userId);
+        List<PlayHistory> rows = playHistoryRepository.findByUserIdOrderByPlayedAtDesc(userId, PageRequest.of(0, 100));
+        songCatalogRepository.hydrate(rows);
+        return rows;
+    }
+
+    /** Up to {@code size + 1} plays after the cursor, newest first (see {@link KeysetCursor#page}). */
+    public List<PlayHistory> getHistoryPage(Long userId, KeysetCursor cursor, int size) {
+        historyWriteBuffer.flushUser(userId);
+        List<PlayHistory> rows = playHistoryRepository.findPageAfter(userId, cursor.sortKey, cursor.id,
+                PageRequest.of(0, size + 1));
+        songCatalogRepository.hydrate(rows);
+        return rows;
     }
 
     public void addHistory(Long userId, String songJson) {
@@ -23,18 +78,45 @@ public class HistoryService {
         history.setUserId(userId);
         history.setSongJson(songJson);
         history.setPlayedAt(System.currentTimeMillis());
-        playHistoryRepository.save(history);
+        if (historyWriteBuffer.isEnabled()) {
+            // No transaction here: queueing takes no connection. The buffer stores the play and
+            // records the change in a transaction of its own.
+            historyWriteBuffer.add(history);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            history.setSongRef(songCatalogRepository.refFor(songJson));
+            playHistoryRepository.save(history);
+            libraryChangeService.record(userId, LibraryChangeService.HISTORY, LibraryChangeService.INSERT,
+                    history.getId());
+        });
+    }
+
+    public Map<String, Object> bufferStats() {
+        return historyWriteBuffer.stats();
     }
 
+    /** Deletes the user's plays with the given ids using chunked IN deletes; returns the number removed. */
     @org.springframework.transaction.annotation.Transactional
-    public void batchDeleteHistory(Long userId, List<String> ids) {
-        for (String id : ids) {
+    public int batchDeleteHistory(Long userId, List<?> ids) {
+        Set<Long> historyIds = new LinkedHashSet<>();
+        for (Object id : ids) {
             try {
-                Long historyId = Long.parseLong(id);
-                playHistoryRepository.deleteByUserIdAndId(userId, historyId);
+                historyIds.add(Long.parseLong(String.valueOf(id)));
             } catch (NumberFormatException e) {
                 // Skip invalid IDs
             }
         }
+        List<Long> unique = new ArrayList<>(historyIds);
+        int removed = 0;
+        for (int from = 0; from < unique.size(); from += DELETE_CHUNK) {
+            removed += playHistoryRepository.deleteByUserIdAndIdIn(userId,
+                    unique.subList(from, Math.min(unique.size(), from + DELETE_CHUNK)));
+        }
+        if (removed > 0) {
+            libraryChangeService.record(userId, LibraryChangeService.HISTORY, LibraryChangeService.DELETE, unique,
+                    null);
+        }
+        return removed;
     }
 }
@@ -0,0 +1,457 @@
+package com.musicsquare.service;
+
+import com.musicsquare.entity.PlayHistory;
+import com.musicsquare.repository.BulkWriteRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for play history.
+ *
+ * Plays are queued in a bounded queue, grouped by user, and written by one background thread
+ * as JDBC batches, once {@code batchSize} plays are waiting or {@code flushIntervalMs} has
+ * passed. When the queue is full the {@code overflow} policy decides:
+ * <ul>
+ * <li>{@code block}: wait up to {@code blockTimeoutMs} for room, then write the play on the
+ * caller's thread (backpressure: the overflow itself drops nothing);</li>
+ * <li>{@code drop-newest}: discard the new play;</li>
+ * <li>{@code drop-oldest}: discard the oldest queued play to make room.</li>
+ * </ul>
+ * A batch that fails with a transient error (lost connection, deadlock, lock timeout) is
+ * retried {@code retries} times with doubling backoff and then put back into the queue while
+ * there is room. Plays are lost only when that room is missing, when the error is not
+ * transient (the rows themselves are rejected), or when the final write at shutdown fails;
+ * all of these are counted as failed and logged. A write on the caller's thread that still
+ * fails after the retries throws, so the request reports the error. Every write attempt runs in
+ * a new transaction of its own, so a retry never joins a caller's transaction that the failed
+ * attempt has already marked rollback-only.
+ *
+ * Rows leave the queue only while {@code writeLock} is held and are committed before it is
+ * released, so {@link #flushUser} (called before every history read) sees each play either
+ * still queued (possibly again) or already stored. Whatever is queued at shutdown is written in
+ * {@link #shutdown}.
+ */
+@Slf4j
+@Component
+public class HistoryWriteBuffer {
+
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${music.history.buffer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${music.history.buffer.capacity:10000}")
+    private int capacity;
+
+    @Value("${music.history.buffer.batch-size:200}")
+    private int batchSize;
+
+    @Value("${music.history.buffer.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${music.history.buffer.overflow:block}")
+    private String overflow;
+
+    @Value("${music.history.buffer.block-timeout-ms:200}")
+    private long blockTimeoutMs;
+
+    @Value("${music.history.buffer.retries:3}")
+    private int retries;
+
+    @Value("${music.history.buffer.retry-backoff-ms:100}")
+    private long retryBackoffMs;
+
+    private TransactionTemplate writeTransaction;
+    private PendingPlays queue;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerWrites = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong requeued = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!enabled) {
+            return;
+        }
+        queue = new PendingPlays(Math.max(1, capacity));
+        running = true;
+        writer = new Thread(this::runWriter, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Queues one play; see the class comment for what happens when the queue is full. */
+    public void add(PlayHistory play) {
+        if (!running) {
+            write(List.of(play));
+            return;
+        }
+        boolean queued = queue.offer(play);
+        if (!queued) {
+            switch (overflow) {
+                case "drop-newest":
+                    dropped.incrementAndGet();
+                    return;
+                case "drop-oldest":
+                    while (!queued) {
+                        if (queue.pollOldest() != null) {
+                            dropped.incrementAndGet();
+                        }
+                        queued = queue.offer(play);
+                    }
+                    break;
+                default:
+                    try {
+                        queued = queue.offer(play, blockTimeoutMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (!queued) {
+                        callerWrites.incrementAndGet();
+                        write(List.of(play));
+                        return;
+                    }
+            }
+        }
+        enqueued.incrementAndGet();
+        if (!running) {
+            // Raced with shutdown after its final flush.
+            flushAll();
+        } else if (queue.size() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /** Writes the user's queued plays now, so a following read of their history includes them. */
+    public void flushUser(Long userId) {
+        // Most reads find nothing of the user's queued and need not wait for the writer. Plays
+        // taken out but not yet committed are only ever in flight while writeLock is held.
+        if (queue == null || (!queue.hasUser(userId) && !writeLock.isLocked())) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            writeOrRequeue(queue.takeUser(userId));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Writes everything that is queued; returns the number of plays taken from the queue. */
+    public int flushAll() {
+        if (queue == null) {
+            return 0;
+        }
+        int total = 0;
+        writeLock.lock();
+        try {
+            List<PlayHistory> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                total += batch.size();
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    // Not put back: this runs at shutdown, where the queue is about to go away.
+                    failed.addAndGet(batch.size());
+                    log.error("Could not write {} buffered plays; they are lost", batch.size(), e);
+                }
+                batch.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return total;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("queued", queue != null ? queue.size() : 0);
+        m.put("capacity", capacity);
+        m.put("overflow", overflow);
+        m.put("enqueued", enqueued.get());
+        m.put("written", written.get());
+        m.put("batches", batches.get());
+        m.put("dropped", dropped.get());
+        m.put("callerWrites", callerWrites.get());
+        m.put("retried", retried.get());
+        m.put("requeued", requeued.get());
+        m.put("failed", failed.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(flushIntervalMs + 5000);
+        int remaining = flushAll();
+        log.info("History buffer stopped, {} queued plays written on shutdown", remaining);
+    }
+
+    private void runWriter() {
+        long lastFlush = System.nanoTime();
+        while (running) {
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs) - (System.nanoTime() - lastFlush);
+            if (queue.size() < batchSize && waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            writeLock.lock();
+            try {
+                List<PlayHistory> batch = new ArrayList<>(batchSize);
+                queue.drainTo(batch, batchSize);
+                writeOrRequeue(batch);
+            } finally {
+                writeLock.unlock();
+            }
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    private void writeOrRequeue(List<PlayHistory> batch) {
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            if (!isTransient(e)) {
+                failed.addAndGet(batch.size());
+                log.error("Buffered plays rejected by the database; {} plays lost", batch.size(), e);
+                return;
+            }
+            int back = 0;
+            for (PlayHistory play : batch) {
+                if (queue.offer(play)) {
+                    back++;
+                }
+            }
+            requeued.addAndGet(back);
+            failed.addAndGet(batch.size() - back);
+            log.warn("Could not write {} buffered plays; {} put back into the queue, {} lost", batch.size(), back,
+                    batch.size() - back, e);
+        }
+    }
+
+    /** Stores the batch, retrying transient failures; throws the last error when they are used up. */
+    private void write(List<PlayHistory> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long backoff = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                writeOnce(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= retries || !isTransient(e)) {
+                    throw e;
+                }
+                retried.incrementAndGet();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+                backoff *= 2;
+            }
+        }
+    }
+
+    // Failures that say nothing about the rows: the database was unreachable, busy or chose a deadlock victim.
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    private void writeOnce(List<PlayHistory> batch) {
+        // The plays and their change-log entries commit together; recording also drops any
+        // history view cached while the plays were queued.
+        writeTransaction.executeWithoutResult(status -> {
+            List<Long> ids = bulkWriteRepository.insertPlayHistory(batch);
+            // Users in id order, so concurrent batches lock their version rows in the same order.
+            Map<Long, List<Long>> byUser = new TreeMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                byUser.computeIfAbsent(batch.get(i).getUserId(), u -> new ArrayList<>()).add(ids.get(i));
+            }
+            byUser.forEach((userId, userIds) -> libraryChangeService.record(userId, LibraryChangeService.HISTORY,
+                    LibraryChangeService.INSERT, userIds, null));
+        });
+        written.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    /**
+     * The queued plays, grouped by user so that {@link #flushUser} takes one user's plays
+     * without scanning everyone else's. Users are kept in the order their oldest queued play
+     * arrived, which is the order batches and drop-oldest take them in.
+     */
+    private static final class PendingPlays {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final LinkedHashMap<Long, ArrayDeque<PlayHistory>> byUser = new LinkedHashMap<>();
+        private int size;
+
+        PendingPlays(int capacity) {
+            this.capacity = capacity;
+        }
+
+        boolean offer(PlayHistory play) {
+            lock.lock();
+            try {
+                return enqueue(play);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean offer(PlayHistory play, long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (size >= capacity) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                return enqueue(play);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        PlayHistory pollOldest() {
+            lock.lock();
+            try {
+                Iterator<ArrayDeque<PlayHistory>> users = byUser.values().iterator();
+                if (!users.hasNext()) {
+                    return null;
+                }
+                ArrayDeque<PlayHistory> plays = users.next();
+                PlayHistory play = plays.poll();
+                if (plays.isEmpty()) {
+                    users.remove();
+                }
+                removed(1);
+                return play;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<PlayHistory> takeUser(Long userId) {
+            lock.lock();
+            try {
+                ArrayDeque<PlayHistory> plays = byUser.remove(userId);
+                if (plays == null) {
+                    return List.of();
+                }
+                removed(plays.size());
+                return new ArrayList<>(plays);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Moves up to {@code max} plays, oldest users first, into {@code batch}; returns how many. */
+        int drainTo(List<PlayHistory> batch, int max) {
+            lock.lock();
+            try {
+                int taken = 0;
+                Iterator<ArrayDeque<PlayHistory>> users = byUser.values().iterator();
+                while (taken < max && users.hasNext()) {
+                    ArrayDeque<PlayHistory> plays = users.next();
+                    while (taken < max && !plays.isEmpty()) {
+                        batch.add(plays.poll());
+                        taken++;
+                    }
+                    if (plays.isEmpty()) {
+                        users.remove();
+                    }
+                }
+                removed(taken);
+                return taken;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean hasUser(Long userId) {
+            lock.lock();
+            try {
+                return byUser.containsKey(userId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean enqueue(PlayHistory play) {
+            if (size >= capacity) {
+                return false;
+            }
+            byUser.computeIfAbsent(play.getUserId(), u -> new ArrayDeque<>()).add(play);
+            size++;
+            return true;
+        }
+
+        private void removed(int count) {
+            if (count > 0) {
+                size -= count;
+                notFull.signalAll();
+            }
+        }
+    }
+}
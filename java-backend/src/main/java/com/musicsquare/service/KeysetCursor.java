@@ -0,0 +1,64 @@
+package com.musicsquare.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Position in a list ordered by (sort key DESC, id DESC), the sort key being a timestamp or a
+ * playlist track's position: the key of the last row the client has seen. The next page is the
+ * rows strictly after it, found with a seek predicate on a (owner, sort key, id) index, so every
+ * page costs the same however deep it is. Clients get it as an opaque URL-safe token.
+ */
+public final class KeysetCursor {
+
+    /** Before the first row. */
+    public static final KeysetCursor FIRST = new KeysetCursor(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    public final long sortKey;
+    public final long id;
+
+    public KeysetCursor(long sortKey, long id) {
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    /** Parses a token from {@link #encode}; null or blank means the first page. */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new KeysetCursor(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((sortKey + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds a page response from {@code size + 1} fetched rows: the first {@code size} become
+     * {@code itemsKey}, and the extra row only tells whether a next page exists.
+     */
+    public static <T> Map<String, Object> page(List<T> rows, int size, String itemsKey,
+            Function<T, KeysetCursor> keyOf, Function<List<T>, List<Map<String, Object>>> toItems) {
+        boolean hasMore = rows.size() > size;
+        List<T> shown = hasMore ? new ArrayList<>(rows.subList(0, size)) : rows;
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put(itemsKey, toItems.apply(shown));
+        data.put("size", size);
+        data.put("hasMore", hasMore);
+        data.put("nextCursor", hasMore ? keyOf.apply(shown.get(shown.size() - 1)).encode() : null);
+        return data;
+    }
+}
@@ -0,0 +1,343 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.musicsquare.cache.LibraryCache;
+import com.musicsquare.entity.Favorite;
+import com.musicsquare.entity.LibraryChange;
+import com.musicsquare.entity.LibraryVersion;
+import com.musicsquare.entity.PlayHistory;
+import com.musicsquare.entity.Playlist;
+import com.musicsquare.entity.PlaylistSong;
+import com.musicsquare.repository.FavoriteRepository;
+import com.musicsquare.repository.LibraryChangeRepository;
+import com.musicsquare.repository.PlayHistoryRepository;
+import com.musicsquare.repository.PlaylistRepository;
+import com.musicsquare.repository.PlaylistSongRepository;
+import com.musicsquare.repository.SongCatalogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user change log of the library: playlists, their tracks, favorites and play history.
+ *
+ * Every mutating service method records which items it inserted, updated or deleted; each
+ * change gets the next value of the user's version. A client that holds the full lists at
+ * version v asks for the changes after v and applies them: insert and update both carry the
+ * item's current content and mean "upsert", delete carries only its key. Recording also
+ * drops the user's cached views in {@link LibraryCache}.
+ *
+ * The log is compacted in the background: a change followed by a later change of the same
+ * item is dropped at once, and changes older than the retention (or beyond the per-user
+ * entry limit) are truncated. Only a client whose version lies before the truncated part is
+ * told to resync.
+ */
+@Slf4j
+@Service
+public class LibraryChangeService {
+
+    public static final String PLAYLIST = "playlist";
+    public static final String TRACK = "track";
+    public static final String FAVORITE = "favorite";
+    public static final String HISTORY = "history";
+
+    public static final String INSERT = "insert";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    @Autowired
+    private LibraryChangeRepository changeRepository;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private PlaylistSongRepository playlistSongRepository;
+
+    @Autowired
+    private FavoriteRepository favoriteRepository;
+
+    @Autowired
+    private PlayHistoryRepository playHistoryRepository;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${music.changes.retain-days:7}")
+    private long retainDays;
+
+    @Value("${music.changes.retain-max-entries:10000}")
+    private int retainMaxEntries;
+
+    // Users with changes since the last compaction.
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    @Transactional
+    public void record(Long userId, String kind, String op, Object key) {
+        record(userId, kind, op, Collections.singletonList(key), null);
+    }
+
+    /** Records one change per key; {@code parentId} is the playlist of track changes. */
+    @Transactional
+    public void record(Long userId, String kind, String op, Collection<?> keys, Long parentId) {
+        if (userId == null || keys.isEmpty()) {
+            return;
+        }
+        List<LibraryChange> changes = new ArrayList<>(keys.size());
+        for (Object key : new LinkedHashSet<>(keys)) {
+            LibraryChange c = new LibraryChange();
+            c.setKind(kind);
+            c.setOp(op);
+            c.setItemKey(String.valueOf(key));
+            c.setParentId(parentId);
+            changes.add(c);
+        }
+        changeRepository.append(userId, changes, List.of(viewColumn(kind)));
+        dirty.add(userId);
+        libraryCache.invalidate(userId, view(kind));
+    }
+
+    public LibraryVersion versions(Long userId) {
+        return changeRepository.versions(userId);
+    }
+
+    /** Strong ETag of one of the user's list views; {@code variant} distinguishes renderings of the same view. */
+    public static String etag(LibraryVersion v, LibraryCache.View view, String variant) {
+        long version;
+        switch (view) {
+            case PLAYLISTS:
+                version = v.getPlaylistsVersion();
+                break;
+            case FAVORITES:
+                version = v.getFavoritesVersion();
+                break;
+            default:
+                version = v.getHistoryVersion();
+        }
+        return "\"" + view.name().toLowerCase(Locale.ROOT) + "-" + variant + "-" + v.getUserId() + "-" + version + "\"";
+    }
+
+    /** Whether an If-None-Match header value names the ETag. */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) {
+                t = t.substring(2);
+            }
+            if (t.equals(etag) || t.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Up to {@code limit} changes after version {@code since}, as
+     * {version, changes, hasMore, resync}. Of several changes of one item only the last is
+     * returned; inserts and updates of items that no longer exist are left out, since a later
+     * delete (or the deletion of their playlist) covers them. With resync the log no longer
+     * reaches back to {@code since} and the client has to reload the full lists.
+     */
+    public Map<String, Object> changesSince(Long userId, long since, int limit) {
+        // Rows first, then the counters: a truncation in between shows up in minVersion.
+        List<LibraryChange> rows = changeRepository.findSince(userId, since, limit + 1);
+        LibraryVersion v = changeRepository.versions(userId);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (since < v.getMinVersion() || since > v.getVersion()) {
+            result.put("version", v.getVersion());
+            result.put("changes", List.of());
+            result.put("hasMore", false);
+            result.put("resync", true);
+            return result;
+        }
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+
+        LinkedHashMap<String, LibraryChange> latest = new LinkedHashMap<>();
+        for (LibraryChange c : rows) {
+            String id = c.getKind() + ":" + c.getItemKey();
+            latest.remove(id);
+            latest.put(id, c);
+        }
+        Map<String, Map<String, Object>> content = load(userId, latest.values());
+
+        List<Map<String, Object>> changes = new ArrayList<>(latest.size());
+        for (LibraryChange c : latest.values()) {
+            Map<String, Object> data = null;
+            if (!DELETE.equals(c.getOp())) {
+                data = content.get(c.getKind() + ":" + c.getItemKey());
+                if (data == null) {
+                    continue;
+                }
+            }
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("version", c.getVersion());
+            m.put("kind", c.getKind());
+            m.put("op", c.getOp());
+            m.put("key", c.getItemKey());
+            if (c.getParentId() != null) {
+                m.put("playlistId", c.getParentId());
+            }
+            if (data != null) {
+                m.put("data", data);
+            }
+            changes.add(m);
+        }
+        result.put("version", rows.isEmpty() ? since : rows.get(rows.size() - 1).getVersion());
+        result.put("changes", changes);
+        result.put("hasMore", hasMore);
+        result.put("resync", false);
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${music.changes.compact-interval-ms:600000}")
+    public void compact() {
+        int coalesced = 0;
+        int truncated = 0;
+        try {
+            List<Long> users = new ArrayList<>(dirty);
+            dirty.removeAll(users);
+            for (Long userId : users) {
+                coalesced += changeRepository.coalesce(userId);
+                Long limit = changeRepository.versionAtOffset(userId, retainMaxEntries);
+                if (limit != null) {
+                    truncated += changeRepository.truncate(userId, limit);
+                }
+            }
+            long cutoff = System.currentTimeMillis() - retainDays * 86_400_000L;
+            for (Map.Entry<Long, Long> e : changeRepository.expiredUpTo(cutoff).entrySet()) {
+                truncated += changeRepository.truncate(e.getKey(), e.getValue());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Library change log compaction failed", e);
+        }
+        if (coalesced + truncated > 0) {
+            log.info("Library change log compacted: {} superseded and {} expired changes removed", coalesced, truncated);
+        }
+    }
+
+    // Current content of the inserted/updated items, keyed "kind:key"; items that are gone are absent.
+    private Map<String, Map<String, Object>> load(Long userId, Collection<LibraryChange> changes) {
+        Map<String, List<String>> keys = new HashMap<>();
+        for (LibraryChange c : changes) {
+            if (!DELETE.equals(c.getOp())) {
+                keys.computeIfAbsent(c.getKind(), k -> new ArrayList<>()).add(c.getItemKey());
+            }
+        }
+        Map<String, Map<String, Object>> content = new HashMap<>();
+        if (keys.containsKey(PLAYLIST)) {
+            for (Playlist pl : playlistRepository.findAllById(ids(keys.get(PLAYLIST)))) {
+                if (pl.getUserId().equals(userId)) {
+                    Map<String, Object> m = new HashMap<>();
+                    m.put("id", pl.getId());
+                    m.put("name", pl.getName());
+                    m.put("is_sync", pl.getIsSync() == 1);
+                    m.put("platform", pl.getPlatform());
+                    m.put("external_id", pl.getExternalId());
+                    m.put("can_delete", pl.getCanDelete() == 1);
+                    content.put(PLAYLIST + ":" + pl.getId(), m);
+                }
+            }
+        }
+        if (keys.containsKey(TRACK)) {
+            List<PlaylistSong> songs = playlistSongRepository.findAllById(ids(keys.get(TRACK)));
+            songCatalogRepository.hydrate(songs);
+            for (PlaylistSong s : songs) {
+                Map<String, Object> song = parse(s.getSongJson());
+                if (song != null) {
+                    song.put("uid", s.getId());
+                    song.put("is_local_add", s.getIsLocalAdd() == 1);
+                    // Tracks are listed by position descending; a moved track changes only this.
+                    song.put("position", s.getPosition());
+                    content.put(TRACK + ":" + s.getId(), song);
+                }
+            }
+        }
+        if (keys.containsKey(FAVORITE)) {
+            List<Favorite> favorites = favoriteRepository.findByUserIdAndSongIdIn(userId, keys.get(FAVORITE));
+            songCatalogRepository.hydrate(favorites);
+            for (Favorite f : favorites) {
+                Map<String, Object> song = parse(f.getSongJson());
+                if (song != null) {
+                    content.put(FAVORITE + ":" + f.getSongId(), song);
+                }
+            }
+        }
+        if (keys.containsKey(HISTORY)) {
+            List<PlayHistory> plays = playHistoryRepository.findAllById(ids(keys.get(HISTORY)));
+            songCatalogRepository.hydrate(plays);
+            for (PlayHistory h : plays) {
+                Map<String, Object> song = h.getUserId().equals(userId) ? parse(h.getSongJson()) : null;
+                if (song != null) {
+                    song.put("uid", h.getId());
+                    content.put(HISTORY + ":" + h.getId(), song);
+                }
+            }
+        }
+        return content;
+    }
+
+    private Map<String, Object> parse(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> song = objectMapper.readValue(json, Map.class);
+            return song;
+        } catch (Exception e) {
+            log.warn("Skipping unreadable song JSON in a change snapshot", e);
+            return null;
+        }
+    }
+
+    private static List<Long> ids(List<String> keys) {
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ids.add(Long.parseLong(key));
+        }
+        return ids;
+    }
+
+    private static LibraryCache.View view(String kind) {
+        switch (kind) {
+            case FAVORITE:
+                return LibraryCache.View.FAVORITES;
+            case HISTORY:
+                return LibraryCache.View.HISTORY;
+            default:
+                return LibraryCache.View.PLAYLISTS;
+        }
+    }
+
+    private static String viewColumn(String kind) {
+        return view(kind).name().toLowerCase(Locale.ROOT) + "_version";
+    }
+}
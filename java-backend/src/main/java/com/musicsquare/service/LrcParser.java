@@ -0,0 +1,87 @@
+package com.musicsquare.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses LRC text into a compact, time-sorted list of {@code [timeMs, text]} entries,
+ * following the same rules as Player.parseLyrics in js/player.js. A translation can be
+ * merged in as a third element, {@code [timeMs, text, translation]}.
+ */
+public final class LrcParser {
+
+    private static final Pattern TIME_TAG = Pattern.compile("\\[(\\d{1,3}):(\\d{1,2})(?:[.:](\\d{1,4}))?]");
+    private static final Pattern OFFSET_TAG = Pattern.compile("\\[offset:\\s*([+-]?\\d+)\\s*]", Pattern.CASE_INSENSITIVE);
+
+    // A translated line is matched to the original line starting within this many milliseconds.
+    private static final long TRANSLATION_TOLERANCE_MS = 300;
+
+    private LrcParser() {
+    }
+
+    public static List<List<Object>> parse(String lrc) {
+        List<List<Object>> lines = new ArrayList<>();
+        if (lrc == null || lrc.isBlank()) {
+            return lines;
+        }
+        long offset = 0;
+        Matcher offsetMatcher = OFFSET_TAG.matcher(lrc);
+        if (offsetMatcher.find()) {
+            offset = Long.parseLong(offsetMatcher.group(1));
+        }
+
+        String[] rawLines = lrc.split("\\r?\\n");
+        for (String raw : rawLines) {
+            Matcher m = TIME_TAG.matcher(raw);
+            String text = TIME_TAG.matcher(raw).replaceAll("").trim();
+            if (text.isEmpty() || OFFSET_TAG.matcher(raw).find()) {
+                continue;
+            }
+            boolean foundTag = false;
+            while (m.find()) {
+                long min = Long.parseLong(m.group(1));
+                long sec = Long.parseLong(m.group(2));
+                String frac = m.group(3) != null ? m.group(3) : "0";
+                long ms = Long.parseLong((frac + "00").substring(0, 3));
+                // A positive LRC offset means the lyrics should appear earlier.
+                long time = Math.max(0, min * 60_000 + sec * 1000 + ms - offset);
+                lines.add(new ArrayList<>(List.of(time, text)));
+                foundTag = true;
+            }
+            if (!foundTag && lines.isEmpty() && rawLines.length < 50) {
+                lines.add(new ArrayList<>(List.of(0L, text)));
+            }
+        }
+        lines.sort((a, b) -> Long.compare((Long) a.get(0), (Long) b.get(0)));
+        return lines;
+    }
+
+    /** Attaches each translated line to the original line at (or just before) the same time. */
+    public static void mergeTranslation(List<List<Object>> lines, List<List<Object>> translation) {
+        if (translation.isEmpty()) {
+            return;
+        }
+        TreeMap<Long, List<Object>> byTime = new TreeMap<>();
+        for (List<Object> line : lines) {
+            byTime.putIfAbsent((Long) line.get(0), line);
+        }
+        for (List<Object> tr : translation) {
+            long time = (Long) tr.get(0);
+            Map.Entry<Long, List<Object>> match = byTime.floorEntry(time);
+            if (match == null || time - match.getKey() > TRANSLATION_TOLERANCE_MS) {
+                match = byTime.ceilingEntry(time);
+                if (match == null || match.getKey() - time > TRANSLATION_TOLERANCE_MS) {
+                    continue;
+                }
+            }
+            List<Object> line = match.getValue();
+            if (line.size() == 2) {
+                line.add(tr.get(1));
+            }
+        }
+    }
+}
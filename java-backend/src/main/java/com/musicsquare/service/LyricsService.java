@@ -0,0 +1,188 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.musicsquare.cache.TtlCache;
+import com.musicsquare.entity.Lyric;
+import com.musicsquare.repository.LyricRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+@Service
+public class LyricsService {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private LyricRepository lyricRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${music.netease.api-base:https://netease-cloud-music-api-eight-rho.vercel.app}")
+    private String neteaseApiBase;
+
+    @Value("${music.lyrics.cache.max-bytes:33554432}")
+    private long cacheMaxBytes;
+
+    @Value("${music.lyrics.cache.ttl-seconds:86400}")
+    private long cacheTtlSeconds;
+
+    // Store parsed lyrics in the lyrics table so they survive restarts.
+    @Value("${music.lyrics.persist:true}")
+    private boolean persist;
+
+    private TtlCache<String, List<List<Object>>> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new TtlCache<>(cacheMaxBytes, cacheTtlSeconds * 1000, (key, lines) -> estimateBytes(key, lines));
+    }
+
+    /**
+     * Parsed lyrics for a song, as {@code [[timeMs, text(, translation)], ...]}. Lookup order:
+     * memory cache, lyrics table, then the platform. Lyrics are addressed either by
+     * platform + id (netease, kuwo) or by the LRC URL a parse call returned.
+     */
+    public List<List<Object>> getLyrics(String source, String id, String url) {
+        String key = url != null && !url.isBlank() ? "url:" + url : source + ":" + id;
+        List<List<Object>> lines = cache.get(key, k -> load(k, source, id, url));
+        return lines != null ? lines : List.of();
+    }
+
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
+
+    private List<List<Object>> load(String key, String source, String id, String url) {
+        if (persist) {
+            Optional<Lyric> stored = lyricRepository.findByCacheKey(key);
+            if (stored.isPresent()) {
+                try {
+                    return objectMapper.readValue(stored.get().getLinesJson(), new TypeReference<List<List<Object>>>() {
+                    });
+                } catch (Exception e) {
+                    // Unreadable row: fetch again and overwrite below.
+                }
+            }
+        }
+
+        List<List<Object>> lines = fetch(source, id, url);
+        if (lines == null) {
+            return null;
+        }
+        if (persist) {
+            try {
+                Lyric lyric = lyricRepository.findByCacheKey(key).orElseGet(Lyric::new);
+                lyric.setCacheKey(key);
+                lyric.setLinesJson(objectMapper.writeValueAsString(lines));
+                lyric.setCreatedAt(System.currentTimeMillis());
+                lyricRepository.save(lyric);
+            } catch (DataIntegrityViolationException e) {
+                // Stored concurrently by another instance; either copy is fine.
+            } catch (Exception e) {
+                log.warn("Could not store lyrics {}", key, e);
+            }
+        }
+        return lines;
+    }
+
+    private List<List<Object>> fetch(String source, String id, String url) {
+        if (url != null && !url.isBlank()) {
+            String text = getText(url);
+            return text != null ? LrcParser.parse(text) : null;
+        }
+        if ("netease".equals(source)) {
+            Map<String, Object> json = getJson(neteaseApiBase + "/lyric?id=" + id);
+            if (json == null) {
+                return null;
+            }
+            List<List<Object>> lines = LrcParser.parse(lyricText(json.get("lrc")));
+            LrcParser.mergeTranslation(lines, LrcParser.parse(lyricText(json.get("tlyric"))));
+            return lines;
+        }
+        if ("kuwo".equals(source)) {
+            Map<String, Object> json = getJson("http://m.kuwo.cn/newh5/singles/songinfoandlrc?musicId=" + id);
+            Map<String, Object> data = json != null ? TrackMapper.asMap(json.get("data")) : null;
+            if (data == null || !(data.get("lrclist") instanceof List)) {
+                return null;
+            }
+            // Kuwo already returns timed lines: [{time: "12.34", lineLyric: "..."}]
+            List<List<Object>> lines = new ArrayList<>();
+            for (Object o : (List<?>) data.get("lrclist")) {
+                Map<String, Object> line = TrackMapper.asMap(o);
+                if (line == null || line.get("lineLyric") == null) {
+                    continue;
+                }
+                try {
+                    long time = Math.round(Double.parseDouble(String.valueOf(line.get("time"))) * 1000);
+                    String text = line.get("lineLyric").toString().trim();
+                    if (!text.isEmpty()) {
+                        lines.add(new ArrayList<>(List.of(time, text)));
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return lines;
+        }
+        return null;
+    }
+
+    private static String lyricText(Object block) {
+        Map<String, Object> m = TrackMapper.asMap(block);
+        return m != null && m.get("lyric") != null ? m.get("lyric").toString() : null;
+    }
+
+    private String getText(String url) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", "Mozilla/5.0");
+        try {
+            return restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                    .getBody();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getJson(String url) {
+        String body = getText(url);
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long estimateBytes(String key, List<List<Object>> lines) {
+        long bytes = 64 + key.length() * 2L;
+        for (List<Object> line : lines) {
+            bytes += 48;
+            for (Object o : line) {
+                if (o instanceof String) {
+                    bytes += 40 + ((String) o).length() * 2L;
+                }
+            }
+        }
+        return bytes;
+    }
+}
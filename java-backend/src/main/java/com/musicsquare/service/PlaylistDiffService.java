@@ -0,0 +1,246 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.musicsquare.entity.Playlist;
+import com.musicsquare.entity.PlaylistSong;
+import com.musicsquare.repository.BulkWriteRepository;
+import com.musicsquare.repository.BulkWriteRepository.SongRow;
+import com.musicsquare.repository.PlaylistRepository;
+import com.musicsquare.repository.PlaylistSongRepository;
+import com.musicsquare.repository.SongCatalogRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Applies a fresh track list to a synced playlist as a diff instead of delete-and-reinsert.
+ *
+ * Each track gets a stable key (its "source-songId" id) and a fingerprint of its canonical
+ * JSON. Rows whose key disappeared are deleted, new keys are inserted, rows whose fingerprint
+ * changed are updated in place, and everything else is left alone, so unchanged tracks keep
+ * their uid. When the fingerprint of the whole list equals the one stored on the playlist,
+ * the rows are not even read.
+ *
+ * Tracks are listed by position descending. A synced row's position is minus its index in
+ * the source (0, -1, -2, ...), and manual additions take positions above the highest in use,
+ * so they stay on top. Rows whose index changed only get their position rewritten.
+ */
+@Service
+public class PlaylistDiffService {
+
+    // song_key column length; longer ids are replaced by their hash.
+    private static final int MAX_KEY_LENGTH = 191;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private PlaylistSongRepository playlistSongRepository;
+
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter canonicalWriter;
+
+    /** Counts of what a sync changed. */
+    public static final class SyncSummary {
+        public int inserted;
+        public int deleted;
+        public int updated;
+        // Same content, new position in the source list.
+        public int moved;
+        public int unchanged;
+        // Tracks repeated in the fresh list (same key) or not readable as JSON.
+        public int skipped;
+        // The whole list matched the stored fingerprint; no rows were touched.
+        public boolean playlistUnchanged;
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("inserted", inserted);
+            m.put("deleted", deleted);
+            m.put("updated", updated);
+            m.put("moved", moved);
+            m.put("unchanged", unchanged);
+            m.put("skipped", skipped);
+            m.put("playlistUnchanged", playlistUnchanged);
+            return m;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        canonicalWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
+
+    /**
+     * Makes the synced rows of {@code playlist} match {@code songJsons}. With
+     * {@code keepLocalAdds} the user's manual additions (is_local_add = 1) are outside the
+     * diff and stay; without it they are diffed like any other row, so the playlist ends up
+     * holding exactly the fresh list.
+     */
+    @Transactional
+    public SyncSummary apply(Playlist playlist, List<String> songJsons, boolean keepLocalAdds) {
+        SyncSummary summary = new SyncSummary();
+
+        // Fresh list, keyed and de-duplicated (first occurrence wins, source order kept).
+        LinkedHashMap<String, SongRow> fresh = new LinkedHashMap<>();
+        for (String json : songJsons) {
+            SongRow row = toRow(json);
+            if (row == null || fresh.containsKey(row.key)) {
+                summary.skipped++;
+                continue;
+            }
+            fresh.put(row.key, row);
+        }
+
+        String listFingerprint = listFingerprint(fresh.values(), keepLocalAdds);
+        if (listFingerprint.equals(playlist.getTracksFingerprint())) {
+            summary.playlistUnchanged = true;
+            summary.unchanged = fresh.size();
+            return summary;
+        }
+
+        Map<String, Long> positions = new HashMap<>();
+        long position = 0;
+        for (String key : fresh.keySet()) {
+            positions.put(key, position--);
+        }
+
+        List<PlaylistSong> existing = keepLocalAdds
+                ? playlistSongRepository.findByPlaylistIdAndIsLocalAdd(playlist.getId(), 0)
+                : playlistSongRepository.findByPlaylistId(playlist.getId());
+
+        // Keyless legacy rows are matched by their JSON, which may live in the catalog by now.
+        List<PlaylistSong> keyless = new ArrayList<>();
+        for (PlaylistSong ps : existing) {
+            if (ps.getSongKey() == null) {
+                keyless.add(ps);
+            }
+        }
+        songCatalogRepository.hydrate(keyless);
+
+        List<Long> deleteIds = new ArrayList<>();
+        List<Long> updateIds = new ArrayList<>();
+        List<SongRow> updateRows = new ArrayList<>();
+        List<Long> updatePositions = new ArrayList<>();
+        List<Long> moveIds = new ArrayList<>();
+        List<Long> movePositions = new ArrayList<>();
+        Set<String> matched = new HashSet<>();
+        for (PlaylistSong ps : existing) {
+            String key = ps.getSongKey();
+            String fingerprint = ps.getFingerprint();
+            if (key == null) {
+                // Row from before keys were stored: derive them from its JSON.
+                SongRow legacy = toRow(ps.getSongJson());
+                key = legacy != null ? legacy.key : null;
+                fingerprint = null;
+            }
+            SongRow target = key != null ? fresh.get(key) : null;
+            if (target == null || !matched.add(key)) {
+                // Gone from the source, or a duplicate row of a key already matched.
+                deleteIds.add(ps.getId());
+            } else if (!target.fingerprint.equals(fingerprint) || !Integer.valueOf(0).equals(ps.getIsLocalAdd())) {
+                updateIds.add(ps.getId());
+                updateRows.add(target);
+                updatePositions.add(positions.get(key));
+            } else if (!positions.get(key).equals(ps.getPosition())) {
+                moveIds.add(ps.getId());
+                movePositions.add(positions.get(key));
+            } else {
+                summary.unchanged++;
+            }
+        }
+
+        List<SongRow> inserts = new ArrayList<>();
+        List<Long> insertPositions = new ArrayList<>();
+        for (SongRow row : fresh.values()) {
+            if (!matched.contains(row.key)) {
+                inserts.add(row);
+                insertPositions.add(positions.get(row.key));
+            }
+        }
+
+        // Everything below bypasses the persistence context; nothing of it is pending there.
+        summary.deleted = bulkWriteRepository.deletePlaylistSongs(playlist.getId(), deleteIds);
+        bulkWriteRepository.updateSyncedSongs(updateIds, updateRows, updatePositions);
+        summary.updated = updateIds.size();
+        bulkWriteRepository.moveSyncedSongs(moveIds, movePositions);
+        summary.moved = moveIds.size();
+        List<Long> insertedIds = bulkWriteRepository.insertSyncedSongs(playlist.getId(), inserts, insertPositions,
+                System.currentTimeMillis());
+        summary.inserted = insertedIds.size();
+
+        playlist.setTracksFingerprint(listFingerprint);
+        playlistRepository.save(playlist);
+        libraryChangeService.record(playlist.getUserId(), LibraryChangeService.TRACK, LibraryChangeService.DELETE,
+                deleteIds, playlist.getId());
+        updateIds.addAll(moveIds);
+        libraryChangeService.record(playlist.getUserId(), LibraryChangeService.TRACK, LibraryChangeService.UPDATE,
+                updateIds, playlist.getId());
+        libraryChangeService.record(playlist.getUserId(), LibraryChangeService.TRACK, LibraryChangeService.INSERT,
+                insertedIds, playlist.getId());
+        return summary;
+    }
+
+    private SongRow toRow(String json) {
+        Map<?, ?> song;
+        String canonical;
+        try {
+            song = objectMapper.readValue(json, Map.class);
+            canonical = canonicalWriter.writeValueAsString(song);
+        } catch (Exception e) {
+            return null;
+        }
+        String fingerprint = sha256(canonical);
+        Object id = song.get("id");
+        String key;
+        if (id != null && !id.toString().isEmpty()) {
+            key = id.toString();
+        } else if (song.get("source") != null && song.get("songId") != null) {
+            key = song.get("source") + "-" + song.get("songId");
+        } else {
+            // No identity at all: the content is the identity.
+            key = "fp:" + fingerprint;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            key = "h:" + sha256(key);
+        }
+        return new SongRow(json, key, fingerprint);
+    }
+
+    private static String listFingerprint(Collection<SongRow> rows, boolean keepLocalAdds) {
+        // "v3": lists stored before rows had a position differ once, and get their positions written.
+        StringBuilder sb = new StringBuilder(keepLocalAdds ? "v3 keep\n" : "v3 all\n");
+        for (SongRow row : rows) {
+            sb.append(row.key).append('\t').append(row.fingerprint).append('\n');
+        }
+        return sha256(sb.toString());
+    }
+
+    private static String sha256(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
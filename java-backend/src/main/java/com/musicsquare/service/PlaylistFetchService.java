@@ -0,0 +1,351 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Expands an external playlist (netease / QQ / kuwo) into its full track list on the server,
+ * replacing the chunk-by-chunk loop in js/api.js.
+ */
+@Service
+public class PlaylistFetchService {
+
+    private static final String BROWSER_UA = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    private Executor upstreamExecutor;
+
+    @Value("${music.netease.api-base:https://netease-cloud-music-api-eight-rho.vercel.app}")
+    private String neteaseApiBase;
+
+    @Value("${music.playlist-fetch.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${music.playlist-fetch.parallelism:6}")
+    private int parallelism;
+
+    @Value("${music.playlist-fetch.retries:2}")
+    private int retries;
+
+    @Value("${music.playlist-fetch.deadline-ms:60000}")
+    private long deadlineMs;
+
+    // QQ and kuwo list a playlist page by page; this many tracks per request.
+    @Value("${music.playlist-fetch.page-size:1000}")
+    private int pageSize;
+
+    @Value("${music.playlist-fetch.max-tracks:20000}")
+    private int maxTracks;
+
+    /**
+     * Result of an expansion: the playlist name, its tracks in source order, the chunks or
+     * pages that could not be fetched, and whether the playlist has more than max-tracks.
+     */
+    public static final class FetchedPlaylist {
+        public final String name;
+        public final List<Map<String, Object>> tracks;
+        public final int failedChunks;
+        public final boolean truncated;
+
+        FetchedPlaylist(String name, List<Map<String, Object>> tracks, int failedChunks) {
+            this(name, tracks, failedChunks, false);
+        }
+
+        FetchedPlaylist(String name, List<Map<String, Object>> tracks, int failedChunks, boolean truncated) {
+            this.name = name;
+            this.tracks = tracks;
+            this.failedChunks = failedChunks;
+            this.truncated = truncated;
+        }
+    }
+
+    public FetchedPlaylist fetch(String source, String playlistId) {
+        switch (source) {
+            case "netease":
+                return fetchNetease(playlistId);
+            case "qq":
+                return fetchQQ(playlistId);
+            case "kuwo":
+                return fetchKuwo(playlistId);
+            default:
+                throw new IllegalArgumentException("Unsupported platform: " + source);
+        }
+    }
+
+    private FetchedPlaylist fetchNetease(String playlistId) {
+        URI url = UriComponentsBuilder.fromHttpUrl(neteaseApiBase).path("/playlist/detail")
+                .queryParam("id", "{id}").encode().buildAndExpand(playlistId).toUri();
+        Map<String, Object> json = getJson(url, neteaseHeaders());
+        Map<String, Object> playlist = json != null ? TrackMapper.asMap(json.get("playlist")) : null;
+        if (playlist == null) {
+            return new FetchedPlaylist("未知歌单", List.of(), 0);
+        }
+        String name = playlist.get("name") != null ? playlist.get("name").toString() : "未知歌单";
+
+        List<String> trackIds = new ArrayList<>();
+        if (playlist.get("trackIds") instanceof List) {
+            for (Object o : (List<?>) playlist.get("trackIds")) {
+                Map<String, Object> t = TrackMapper.asMap(o);
+                if (t != null && t.get("id") != null) {
+                    trackIds.add(String.valueOf(t.get("id")));
+                }
+            }
+        }
+        if (trackIds.isEmpty()) {
+            return new FetchedPlaylist(name, List.of(), 0);
+        }
+        boolean truncated = trackIds.size() > maxTracks;
+        if (truncated) {
+            trackIds = trackIds.subList(0, maxTracks);
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < trackIds.size(); i += chunkSize) {
+            chunks.add(trackIds.subList(i, Math.min(trackIds.size(), i + chunkSize)));
+        }
+
+        // Workers pull chunk indexes from a shared counter, so at most `parallelism`
+        // /song/detail calls are in flight regardless of playlist size.
+        Map<String, Map<String, Object>> details = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicBoolean expired = new AtomicBoolean();
+        int workers = Math.min(parallelism, chunks.size());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(() -> {
+                int index;
+                while (!expired.get() && (index = next.getAndIncrement()) < chunks.size()) {
+                    if (fetchNeteaseChunk(chunks.get(index), details)) {
+                        fetched.incrementAndGet();
+                    }
+                }
+            }, upstreamExecutor);
+        }
+        try {
+            CompletableFuture.allOf(running).get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            expired.set(true);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            expired.set(true);
+        }
+        // Everything not fetched by now counts as failed: chunks that gave up, chunks never
+        // started, and chunks a worker was still fetching at the deadline.
+        int failed = chunks.size() - fetched.get();
+
+        // Re-map onto trackIds to keep the playlist order; workers past the deadline may still be adding.
+        List<Map<String, Object>> tracks = new ArrayList<>(trackIds.size());
+        for (String id : trackIds) {
+            Map<String, Object> item = details.get(id);
+            if (item != null) {
+                tracks.add(TrackMapper.neteaseDetail(item));
+            }
+        }
+        return new FetchedPlaylist(name, tracks, failed, truncated);
+    }
+
+    private boolean fetchNeteaseChunk(List<String> ids, Map<String, Map<String, Object>> details) {
+        URI url = UriComponentsBuilder.fromHttpUrl(neteaseApiBase).path("/song/detail")
+                .queryParam("ids", "{ids}").encode().buildAndExpand(String.join(",", ids)).toUri();
+        Map<String, Object> json = getJsonWithRetries(url, neteaseHeaders(), j -> j.get("songs") instanceof List);
+        if (json == null) {
+            return false;
+        }
+        for (Object o : (List<?>) json.get("songs")) {
+            Map<String, Object> song = TrackMapper.asMap(o);
+            if (song != null && song.get("id") != null) {
+                details.put(String.valueOf(song.get("id")), song);
+            }
+        }
+        return true;
+    }
+
+    private FetchedPlaylist fetchQQ(String playlistId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        headers.set("Referer", "https://y.qq.com/");
+
+        // Pages are read one after another until a short page or the reported total; a page
+        // that still fails after its retries ends the listing and is reported as a failed chunk.
+        String name = "未知歌单";
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        int failed = 0;
+        boolean truncated = false;
+        for (int begin = 0; ; begin += pageSize) {
+            if (tracks.size() >= maxTracks) {
+                truncated = true;
+                break;
+            }
+            URI url = UriComponentsBuilder.fromHttpUrl(
+                            "https://c.y.qq.com/qzone/fcg-bin/fcg_ucc_getcdinfo_byids_cp.fcg?type=1&json=1&utf8=1"
+                                    + "&onlysong=0&format=json")
+                    .queryParam("disstid", "{id}")
+                    .queryParam("song_begin", begin)
+                    .queryParam("song_num", pageSize)
+                    .encode().buildAndExpand(playlistId).toUri();
+            Map<String, Object> json = begin == 0 ? getJson(url, headers) : getJsonWithRetries(url, headers, j -> true);
+            if (json == null) {
+                failed++;
+                break;
+            }
+            Object cdlist = json.get("cdlist");
+            Map<String, Object> cd = cdlist instanceof List && !((List<?>) cdlist).isEmpty()
+                    ? TrackMapper.asMap(((List<?>) cdlist).get(0)) : null;
+            if (cd == null) {
+                break;
+            }
+            if (begin == 0 && cd.get("dissname") != null) {
+                name = cd.get("dissname").toString();
+            }
+            int received = 0;
+            if (cd.get("songlist") instanceof List) {
+                for (Object o : (List<?>) cd.get("songlist")) {
+                    Map<String, Object> item = TrackMapper.asMap(o);
+                    if (item != null) {
+                        Map<String, Object> track = TrackMapper.qqSong(item);
+                        track.remove("duration");
+                        tracks.add(track);
+                    }
+                    received++;
+                }
+            }
+            if (received < pageSize || tracks.size() >= intValue(cd.get("total_song_num"), Integer.MAX_VALUE)) {
+                break;
+            }
+        }
+        if (tracks.size() > maxTracks) {
+            tracks = new ArrayList<>(tracks.subList(0, maxTracks));
+        }
+        return new FetchedPlaylist(name, tracks, failed, truncated);
+    }
+
+    private FetchedPlaylist fetchKuwo(String playlistId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+
+        // Paged like QQ above.
+        String name = "未知歌单";
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        int failed = 0;
+        boolean truncated = false;
+        for (int page = 0; ; page++) {
+            if (tracks.size() >= maxTracks) {
+                truncated = true;
+                break;
+            }
+            URI url = UriComponentsBuilder.fromHttpUrl(
+                            "http://nplserver.kuwo.cn/pl.svc?op=getlistinfo&encode=utf8&keyset=pl2026"
+                                    + "&vipver=MUSIC_9.0.5.0_W1&newver=1")
+                    .queryParam("pid", "{id}")
+                    .queryParam("pn", page)
+                    .queryParam("rn", pageSize)
+                    .encode().buildAndExpand(playlistId).toUri();
+            Map<String, Object> json = page == 0 ? getJson(url, headers) : getJsonWithRetries(url, headers, j -> true);
+            if (json == null) {
+                failed++;
+                break;
+            }
+            if (page == 0 && json.get("title") != null) {
+                name = json.get("title").toString();
+            }
+            int received = 0;
+            if (json.get("musiclist") instanceof List) {
+                for (Object o : (List<?>) json.get("musiclist")) {
+                    Map<String, Object> item = TrackMapper.asMap(o);
+                    if (item != null) {
+                        tracks.add(TrackMapper.kuwoMusic(item));
+                    }
+                    received++;
+                }
+            }
+            if (received < pageSize || tracks.size() >= intValue(json.get("total"), Integer.MAX_VALUE)) {
+                break;
+            }
+        }
+        if (tracks.size() > maxTracks) {
+            tracks = new ArrayList<>(tracks.subList(0, maxTracks));
+        }
+        return new FetchedPlaylist(name, tracks, failed, truncated);
+    }
+
+    private static int intValue(Object value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private HttpHeaders neteaseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        headers.set("Referer", "https://music.163.com/");
+        return headers;
+    }
+
+    /** Like {@link #getJson} with up to {@code retries} retries; null once every attempt failed. */
+    private Map<String, Object> getJsonWithRetries(URI url, HttpHeaders headers, Predicate<Map<String, Object>> valid) {
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                Map<String, Object> json = getJson(url, headers);
+                if (json != null && valid.test(json)) {
+                    return json;
+                }
+            } catch (RuntimeException e) {
+                // Retry below.
+            }
+            if (attempt < retries) {
+                try {
+                    Thread.sleep(200L * (attempt + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getJson(URI url, HttpHeaders headers) {
+        String body = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getBody();
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unparseable playlist response", e);
+        }
+    }
+}
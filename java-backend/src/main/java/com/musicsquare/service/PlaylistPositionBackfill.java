@@ -0,0 +1,81 @@
+package com.musicsquare.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fills playlist_songs.position for rows written before the column existed.
+ *
+ * Those rows were listed by created_at descending, so each playlist's rows are numbered 1..n
+ * in (created_at, id) order, which keeps the order they had. Synced rows used created_at as
+ * their sort key (the playlist's creation time minus their index in the source); they get the
+ * playlist's creation time back. Their next sync writes their real positions. Playlists are
+ * processed whole, {@code chunk} at a time. Finally idx_playlist_songs_playlist is rebuilt on
+ * (playlist_id, position) if it still has the old columns, which schema update leaves alone.
+ */
+@Slf4j
+@Component
+@Order(3)
+public class PlaylistPositionBackfill implements ApplicationRunner {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${music.playlists.position-backfill-chunk:100}")
+    private int chunk;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM playlist_songs WHERE position IS NULL",
+                Integer.class);
+        if (pending != null && pending > 0) {
+            backfill();
+        }
+        ensureIndex();
+    }
+
+    private void backfill() {
+        int playlists = 0;
+        int filled = 0;
+        List<Long> ids;
+        while (!(ids = jdbcTemplate.queryForList("SELECT DISTINCT playlist_id FROM playlist_songs"
+                + " WHERE position IS NULL LIMIT ?", Long.class, Math.max(1, chunk))).isEmpty()) {
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            filled += jdbcTemplate.update("UPDATE playlist_songs ps"
+                    + " JOIN (SELECT id, ROW_NUMBER() OVER (PARTITION BY playlist_id ORDER BY created_at, id) AS n"
+                    + " FROM playlist_songs WHERE position IS NULL AND playlist_id IN (" + placeholders + ")) r"
+                    + " ON r.id = ps.id"
+                    + " LEFT JOIN playlists p ON p.id = ps.playlist_id"
+                    + " SET ps.position = r.n, ps.created_at = CASE WHEN ps.song_key IS NOT NULL"
+                    + " AND ps.is_local_add = 0 THEN COALESCE(p.created_at, ps.created_at) ELSE ps.created_at END",
+                    ids.toArray());
+            playlists += ids.size();
+        }
+        log.info("playlist_songs.position backfill: {} rows in {} playlists", filled, playlists);
+    }
+
+    private void ensureIndex() {
+        Integer current = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = 'playlist_songs'"
+                + " AND index_name = 'idx_playlist_songs_playlist' AND column_name = 'position'", Integer.class);
+        if (current != null && current > 0) {
+            return;
+        }
+        Integer exists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = 'playlist_songs'"
+                + " AND index_name = 'idx_playlist_songs_playlist'", Integer.class);
+        // Dropped and added in one statement, so the foreign key on playlist_id always has an index.
+        jdbcTemplate.execute("ALTER TABLE playlist_songs "
+                + (exists != null && exists > 0 ? "DROP INDEX idx_playlist_songs_playlist, " : "")
+                + "ADD INDEX idx_playlist_songs_playlist (playlist_id, position)");
+    }
+}
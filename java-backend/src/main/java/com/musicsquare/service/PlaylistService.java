@@ -1,33 +1,108 @@
 package com.musicsquare.service;
 
+import com.musicsquare.cache.LibraryCache;
 import com.musicsquare.entity.Playlist;
 import com.musicsquare.entity.PlaylistSong;
+import com.musicsquare.repository.BulkWriteRepository;
 import com.musicsquare.repository.PlaylistRepository;
 import com.musicsquare.repository.PlaylistSongRepository;
+import com.musicsquare.repository.SongCatalogRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class PlaylistService {
 
+    // Upper bound on ids per DELETE ... IN (...) statement.
+    private static final int DELETE_CHUNK = 1000;
+
     @Autowired
     private PlaylistRepository playlistRepository;
 
     @Autowired
     private PlaylistSongRepository playlistSongRepository;
 
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private PlaylistDiffService playlistDiffService;
+
+    @Autowired
+    private SongJsonStreamer songJsonStreamer;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    /** Writes the user's playlists with all tracks as a JSON array, from the library cache when possible. */
+    public void writePlaylists(Long userId, OutputStream out) throws IOException {
+        libraryCache.writeTo(userId, LibraryCache.View.PLAYLISTS, out,
+                buf -> songJsonStreamer.writePlaylists(userId, buf));
+    }
+
     public List<Playlist> getUserPlaylists(Long userId) {
         return playlistRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
 
     public List<PlaylistSong> getPlaylistSongs(Long playlistId) {
-        return playlistSongRepository.findByPlaylistIdOrderByCreatedAtDesc(playlistId);
+        List<PlaylistSong> songs = playlistSongRepository.findByPlaylistIdOrderByPositionDescIdDesc(playlistId);
+        songCatalogRepository.hydrate(songs);
+        return songs;
+    }
+
+    /** Track count per playlist id of the user; playlists without tracks are absent. */
+    public Map<Long, Long> countTracksByPlaylist(Long userId) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] row : playlistSongRepository.countByUserId(userId)) {
+            counts.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    /** Up to {@code size + 1} songs after the cursor, or empty if the playlist is not the user's. */
+    public Optional<List<PlaylistSong>> getPlaylistSongsAfter(Long userId, Long playlistId, KeysetCursor cursor,
+            int size) {
+        Optional<Playlist> pl = playlistRepository.findById(playlistId);
+        if (pl.isEmpty() || !pl.get().getUserId().equals(userId)) {
+            return Optional.empty();
+        }
+        List<PlaylistSong> songs = playlistSongRepository.findPageAfter(playlistId, cursor.sortKey, cursor.id,
+                PageRequest.of(0, size + 1));
+        songCatalogRepository.hydrate(songs);
+        return Optional.of(songs);
+    }
+
+    /** One page of a playlist's songs, newest first; empty when the playlist is not the user's. */
+    public Optional<Page<PlaylistSong>> getPlaylistSongsPage(Long userId, Long playlistId, int page, int size) {
+        Optional<Playlist> pl = playlistRepository.findById(playlistId);
+        if (pl.isEmpty() || !pl.get().getUserId().equals(userId)) {
+            return Optional.empty();
+        }
+        Page<PlaylistSong> songs = playlistSongRepository.findByPlaylistIdOrderByPositionDescIdDesc(
+                playlistId, PageRequest.of(page, size));
+        songCatalogRepository.hydrate(songs.getContent());
+        return Optional.of(songs);
     }
 
+    @Transactional
     public Playlist createPlaylist(Long userId, String name) {
         Playlist pl = new Playlist();
         pl.setUserId(userId);
@@ -36,7 +111,9 @@ public class PlaylistService {
         pl.setIsSync(0);
         pl.setPlatform("local");
         pl.setCanDelete(1);
-        return playlistRepository.save(pl);
+        Playlist saved = playlistRepository.save(pl);
+        libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.INSERT, saved.getId());
+        return saved;
     }
 
     @Transactional
@@ -45,55 +122,76 @@ public class PlaylistService {
         if (pl.isPresent() && pl.get().getUserId().equals(userId)) {
             playlistSongRepository.deleteByPlaylistId(playlistId);
             playlistRepository.deleteById(playlistId);
+            libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.DELETE, playlistId);
         }
     }
 
+    @Transactional
     public void renamePlaylist(Long userId, Long playlistId, String name) {
         Playlist pl = playlistRepository.findById(playlistId).orElseThrow();
         if (pl.getUserId().equals(userId)) {
             pl.setName(name);
             playlistRepository.save(pl);
+            libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.UPDATE, playlistId);
         }
     }
 
+    @Transactional
     public PlaylistSong addSongToPlaylist(Long playlistId, String songJson, Integer isLocalAdd) {
         PlaylistSong ps = new PlaylistSong();
         ps.setPlaylistId(playlistId);
         ps.setSongJson(songJson);
+        ps.setSongRef(songCatalogRepository.refFor(songJson));
         ps.setIsLocalAdd(isLocalAdd);
         ps.setCreatedAt(System.currentTimeMillis());
-        return playlistSongRepository.save(ps);
+        ps.setPosition(bulkWriteRepository.nextPosition(playlistId));
+        PlaylistSong saved = playlistSongRepository.save(ps);
+        playlistRepository.clearTracksFingerprint(playlistId);
+        recordTracks(playlistId, LibraryChangeService.INSERT, List.of(saved.getId()));
+        return saved;
     }
 
     @Transactional
     public void removeSongFromPlaylist(Long playlistId, Long songUid) {
         playlistSongRepository.deleteByPlaylistIdAndId(playlistId, songUid);
+        // A removed synced track must come back on the next sync.
+        playlistRepository.clearTracksFingerprint(playlistId);
+        recordTracks(playlistId, LibraryChangeService.DELETE, List.of(songUid));
     }
 
+    /**
+     * Removes the given songs from one of the user's playlists with chunked IN deletes and
+     * returns how many rows went away (0 if the playlist is not the user's).
+     */
     @Transactional
-    public void removeBatchSongsFromPlaylist(Long playlistId, List<Long> uids) {
-        for (Long uid : uids) {
-            playlistSongRepository.deleteByPlaylistIdAndId(playlistId, uid);
+    public int removeBatchSongsFromPlaylist(Long userId, Long playlistId, List<Long> uids) {
+        List<Long> unique = new ArrayList<>(new LinkedHashSet<>(uids));
+        int removed = 0;
+        for (int from = 0; from < unique.size(); from += DELETE_CHUNK) {
+            removed += playlistSongRepository.deleteOwnedByIdIn(playlistId, userId,
+                    unique.subList(from, Math.min(unique.size(), from + DELETE_CHUNK)));
+        }
+        if (removed > 0) {
+            playlistRepository.clearTracksFingerprint(playlistId);
+            // Uids that were not in the playlist get a delete too; applying it changes nothing.
+            libraryChangeService.record(userId, LibraryChangeService.TRACK, LibraryChangeService.DELETE, unique,
+                    playlistId);
         }
+        return removed;
     }
 
+    /** Adds the songs as manual additions and returns their uids in request order. */
     @Transactional
-    public int addBatchSongsToPlaylist(Long playlistId, List<String> songJsons) {
-        int count = 0;
-        for (String json : songJsons) {
-            PlaylistSong ps = new PlaylistSong();
-            ps.setPlaylistId(playlistId);
-            ps.setSongJson(json);
-            ps.setIsLocalAdd(1);
-            ps.setCreatedAt(System.currentTimeMillis());
-            playlistSongRepository.save(ps);
-            count++;
-        }
-        return count;
+    public List<Long> addBatchSongsToPlaylist(Long playlistId, List<String> songJsons) {
+        List<Long> uids = bulkWriteRepository.insertPlaylistSongs(playlistId, songJsons, 1, System.currentTimeMillis());
+        playlistRepository.clearTracksFingerprint(playlistId);
+        recordTracks(playlistId, LibraryChangeService.INSERT, uids);
+        return uids;
     }
 
     @Transactional
-    public void syncPlaylist(Long userId, String platform, String externalId, String name, List<String> songJsons) {
+    public PlaylistDiffService.SyncSummary syncPlaylist(Long userId, String platform, String externalId, String name,
+            List<String> songJsons) {
         // Find existing playlist or create new
         Playlist pl = playlistRepository.findByUserIdAndPlatformAndExternalId(userId, platform, externalId)
                 .orElseGet(() -> {
@@ -105,40 +203,27 @@ public class PlaylistService {
                     newPl.setIsSync(1);
                     newPl.setCreatedAt(System.currentTimeMillis());
                     newPl.setCanDelete(1);
-                    return playlistRepository.save(newPl);
+                    Playlist saved = playlistRepository.save(newPl);
+                    libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.INSERT,
+                            saved.getId());
+                    return saved;
                 });
 
         // Update name if changed
         if (!pl.getName().equals(name)) {
             pl.setName(name);
             playlistRepository.save(pl);
+            libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.UPDATE, pl.getId());
         }
 
-        // Incremental sync logic from service.js:
-        // "This endpoint handles adding new songs AND removing deleted songs (while preserving manual adds)"
-        // But for SIMPLICITY in Java backend initial version, and since service.js sends the FULL list of fresh songs:
-        
-        // Strategy:
-        // 1. Get all existing songs for this playlist
-        // 2. Identify manual adds (isLocalAdd=1) -> Keep them
-        // 3. Identify sync songs (isLocalAdd=0) -> Replace them with new list?
-        // Service.js says "Increment Sync", but it sends `songs: freshSongs` which is the FULL list from source.
-        
-        // Let's matching the "smart sync" logic might be complex. 
-        // A simple approach for now: 
-        // Delete all `isLocalAdd=0` (synced songs) and re-insert the new list.
-        // This preserves `isLocalAdd=1` (manual additions).
-        
-        playlistSongRepository.deleteByPlaylistIdAndIsLocalAdd(pl.getId(), 0);
-
-        // Insert new songs
-        for (String json : songJsons) {
-            PlaylistSong ps = new PlaylistSong();
-            ps.setPlaylistId(pl.getId());
-            ps.setSongJson(json);
-            ps.setIsLocalAdd(0); // It's a synced song
-            ps.setCreatedAt(System.currentTimeMillis());
-            playlistSongRepository.save(ps);
-        }
+        // service.js sends the FULL fresh list from the source. Apply it as a diff against the
+        // synced rows (isLocalAdd=0): manual additions stay, unchanged tracks keep their uid.
+        return playlistDiffService.apply(pl, songJsons, true);
+    }
+
+    // These endpoints address the playlist only; the changes belong to its owner's library.
+    private void recordTracks(Long playlistId, String op, List<Long> uids) {
+        playlistRepository.findById(playlistId).ifPresent(pl -> libraryChangeService.record(pl.getUserId(),
+                LibraryChangeService.TRACK, op, uids, playlistId));
     }
 }
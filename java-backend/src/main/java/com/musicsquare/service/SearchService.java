@@ -0,0 +1,273 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+@Service
+public class SearchService {
+
+    public static final List<String> SOURCES = List.of("netease", "qq", "kuwo");
+
+    private static final String BROWSER_UA = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    // Kuwo answers with a JavaScript object literal (single quotes), not strict JSON.
+    private static final ObjectMapper LENIENT = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .build();
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    private Executor upstreamExecutor;
+
+    @Value("${music.netease.api-base:https://netease-cloud-music-api-eight-rho.vercel.app}")
+    private String neteaseApiBase;
+
+    @Value("${music.search.source-timeout-ms:5000}")
+    private long sourceTimeoutMs;
+
+    @Value("${music.search.deadline-ms:8000}")
+    private long deadlineMs;
+
+    /** Outcome of one platform search. */
+    public static final class SourceResult {
+        public final String source;
+        public final List<Map<String, Object>> tracks;
+        public final String error;
+        public final long elapsedMs;
+
+        SourceResult(String source, List<Map<String, Object>> tracks, String error, long elapsedMs) {
+            this.source = source;
+            this.tracks = tracks;
+            this.error = error;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public Map<String, Object> summary() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", tracks.size());
+            m.put("elapsedMs", elapsedMs);
+            if (error != null) {
+                m.put("error", error);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * Queries all sources concurrently. Each source gets its own timeout; {@code onResult}
+     * (optional) fires as soon as a source finishes. Whatever has arrived by the global
+     * deadline is returned, in {@link #SOURCES} order. Blocks the calling thread, so it must
+     * not be called from an upstreamExecutor task; see {@link #searchAllAsync}.
+     */
+    public List<SourceResult> searchAll(String keyword, int page, int limit,
+            BiConsumer<String, SourceResult> onResult) {
+        return searchAllAsync(keyword, page, limit, onResult).join();
+    }
+
+    /**
+     * Same as {@link #searchAll}, without blocking a thread while the sources run: the future
+     * completes on whichever thread finishes the last source, or at the deadline.
+     */
+    public CompletableFuture<List<SourceResult>> searchAllAsync(String keyword, int page, int limit,
+            BiConsumer<String, SourceResult> onResult) {
+        Map<String, CompletableFuture<SourceResult>> futures = new LinkedHashMap<>();
+        for (String source : SOURCES) {
+            long start = System.nanoTime();
+            CompletableFuture<SourceResult> f = CompletableFuture
+                    .supplyAsync(() -> search(source, keyword, page, limit), upstreamExecutor)
+                    .completeOnTimeout(null, sourceTimeoutMs, TimeUnit.MILLISECONDS)
+                    .handle((tracks, ex) -> {
+                        long ms = (System.nanoTime() - start) / 1_000_000;
+                        if (ex != null) {
+                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                            return new SourceResult(source, List.of(), cause.getMessage(), ms);
+                        }
+                        if (tracks == null) {
+                            return new SourceResult(source, List.of(), "timeout", ms);
+                        }
+                        return new SourceResult(source, tracks, null, ms);
+                    });
+            if (onResult != null) {
+                f = f.whenComplete((r, ex) -> {
+                    if (r != null) {
+                        onResult.accept(source, r);
+                    }
+                });
+            }
+            futures.put(source, f);
+        }
+
+        // At the deadline, report what has finished and the rest as timed out.
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, deadlineMs, TimeUnit.MILLISECONDS)
+                .handle((done, ex) -> {
+                    List<SourceResult> results = new ArrayList<>();
+                    futures.forEach((source, f) -> results.add(
+                            f.getNow(new SourceResult(source, List.of(), "deadline exceeded", deadlineMs))));
+                    return results;
+                });
+    }
+
+    /**
+     * Round-robin interleave of the per-source lists (same as the client-side merge), dropping
+     * exact duplicate ids and, when {@code dedupe} is set, the same title+artist from a later
+     * source.
+     */
+    public static List<Map<String, Object>> merge(List<SourceResult> results, boolean dedupe) {
+        List<Map<String, Object>> merged = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int maxLen = results.stream().mapToInt(r -> r.tracks.size()).max().orElse(0);
+        for (int i = 0; i < maxLen; i++) {
+            for (SourceResult r : results) {
+                if (i >= r.tracks.size()) {
+                    continue;
+                }
+                Map<String, Object> track = r.tracks.get(i);
+                if (!seen.add("id:" + track.get("id"))) {
+                    continue;
+                }
+                if (dedupe && !seen.add("song:" + normalize(track.get("title")) + "|" + normalize(track.get("artist")))) {
+                    continue;
+                }
+                merged.add(track);
+            }
+        }
+        return merged;
+    }
+
+    private static String normalize(Object value) {
+        if (value == null) {
+            return "";
+        }
+        return value.toString().toLowerCase(Locale.ROOT).replaceAll("\\s+", "");
+    }
+
+    private List<Map<String, Object>> search(String source, String keyword, int page, int limit) {
+        switch (source) {
+            case "netease":
+                return searchNetease(keyword, page, limit);
+            case "qq":
+                return searchQQ(keyword, page, limit);
+            case "kuwo":
+                return searchKuwo(keyword, page, limit);
+            default:
+                return List.of();
+        }
+    }
+
+    private List<Map<String, Object>> searchNetease(String keyword, int page, int limit) {
+        int offset = (page - 1) * limit;
+        String url = neteaseApiBase + "/search?keywords=" + encode(keyword) + "&offset=" + offset + "&limit=" + limit;
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        headers.set("Referer", "https://music.163.com/");
+        Map<String, Object> json = getJson(url, headers, false);
+
+        Map<String, Object> result = json != null ? TrackMapper.asMap(json.get("result")) : null;
+        Object songs = result != null ? result.get("songs") : null;
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        if (songs instanceof List) {
+            for (Object o : (List<?>) songs) {
+                Map<String, Object> item = TrackMapper.asMap(o);
+                if (item != null) {
+                    tracks.add(TrackMapper.neteaseSearch(item));
+                }
+            }
+        }
+        return tracks;
+    }
+
+    private List<Map<String, Object>> searchQQ(String keyword, int page, int limit) {
+        String url = "https://shc.y.qq.com/soso/fcgi-bin/search_for_qq_cp?w=" + encode(keyword)
+                + "&p=" + page + "&n=" + limit + "&format=json";
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        headers.set("Referer", "https://y.qq.com/");
+        Map<String, Object> json = getJson(url, headers, false);
+
+        Map<String, Object> data = json != null ? TrackMapper.asMap(json.get("data")) : null;
+        Map<String, Object> song = data != null ? TrackMapper.asMap(data.get("song")) : null;
+        Object list = song != null ? song.get("list") : null;
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        if (list instanceof List) {
+            for (Object o : (List<?>) list) {
+                Map<String, Object> item = TrackMapper.asMap(o);
+                if (item != null) {
+                    tracks.add(TrackMapper.qqSong(item));
+                }
+            }
+        }
+        return tracks;
+    }
+
+    private List<Map<String, Object>> searchKuwo(String keyword, int page, int limit) {
+        String url = "http://www.kuwo.cn/search/searchMusicBykeyWord?vipver=1&client=kt&ft=music&cluster=0"
+                + "&strategy=2026&encoding=utf8&rformat=json&mobi=1&issubtitle=1&show_copyright_off=1"
+                + "&pn=" + (page - 1) + "&rn=" + limit + "&all=" + encode(keyword);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        Map<String, Object> json = getJson(url, headers, true);
+
+        Object abslist = json != null ? json.get("abslist") : null;
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        if (abslist instanceof List) {
+            for (Object o : (List<?>) abslist) {
+                Map<String, Object> item = TrackMapper.asMap(o);
+                if (item != null && item.get("MUSICRID") != null) {
+                    tracks.add(TrackMapper.kuwoSearch(item));
+                }
+            }
+        }
+        return tracks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getJson(String url, HttpHeaders headers, boolean lenient) {
+        // Pass a URI so the already-encoded keyword is not encoded a second time.
+        String body = restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getBody();
+        if (body == null) {
+            return null;
+        }
+        body = body.trim();
+        if (body.startsWith("jsondata=")) {
+            body = body.substring("jsondata=".length());
+        }
+        try {
+            return (lenient ? LENIENT : objectMapper).readValue(body, Map.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unparseable search response", e);
+        }
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
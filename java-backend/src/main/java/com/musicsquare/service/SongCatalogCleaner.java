@@ -0,0 +1,71 @@
+package com.musicsquare.service;
+
+import com.musicsquare.repository.SongCatalogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes songs catalog rows that no playlist song, favorite or play history row references
+ * any more, so the catalog does not keep every song ever seen.
+ *
+ * Each run walks the next {@code scan-rows} ids of the catalog, wrapping around at the end.
+ * Unreferenced rows older than {@code grace-ms} are only evicted from the catalog caches at
+ * first and deleted one run later, if still unreferenced: a write that picked up such a row
+ * from the cache just before the eviction has committed its reference by then.
+ */
+@Slf4j
+@Component
+public class SongCatalogCleaner {
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Value("${music.songs.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${music.songs.gc.scan-rows:50000}")
+    private long scanRows;
+
+    @Value("${music.songs.gc.grace-ms:3600000}")
+    private long graceMs;
+
+    private long cursor;
+    private List<Long> pending = new ArrayList<>();
+
+    @Scheduled(initialDelayString = "${music.songs.gc.interval-ms:600000}",
+            fixedDelayString = "${music.songs.gc.interval-ms:600000}")
+    public void clean() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!pending.isEmpty()) {
+                int deleted = songCatalogRepository.deleteUnreferenced(pending);
+                if (deleted > 0) {
+                    log.info("Songs catalog cleanup: {} unreferenced rows deleted", deleted);
+                }
+                pending = new ArrayList<>();
+            }
+
+            long maxId = songCatalogRepository.maxId();
+            if (cursor >= maxId) {
+                cursor = 0;
+            }
+            long to = Math.min(maxId, cursor + scanRows);
+            Map<Long, String> candidates = songCatalogRepository.findUnreferenced(cursor, to,
+                    System.currentTimeMillis() - graceMs);
+            songCatalogRepository.evict(candidates);
+            pending = new ArrayList<>(candidates.keySet());
+            cursor = to;
+        } catch (RuntimeException e) {
+            log.warn("Songs catalog cleanup failed", e);
+        }
+    }
+}
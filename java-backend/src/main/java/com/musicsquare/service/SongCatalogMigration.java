@@ -0,0 +1,114 @@
+package com.musicsquare.service;
+
+import com.musicsquare.codec.SongPayloadConverter;
+import com.musicsquare.repository.SongCatalogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves song payloads stored per row into the songs catalog.
+ *
+ * For each of playlist_songs, favorites and play_history, song_json is made nullable, then
+ * rows without a song_ref are processed in chunks: their payloads are added to the catalog
+ * and the row keeps only the reference. Reads handle both forms, so the app is usable while
+ * this runs, and a restart simply continues with the rows that are left. Runs after
+ * {@link FavoriteSongIdBackfill}, which still needs the favorites' own song_json.
+ *
+ * Before that, catalog rows that still hold plain song_json are encoded into payload, so the
+ * catalog ends up in a single representation.
+ */
+@Slf4j
+@Component
+@Order(2)
+public class SongCatalogMigration implements ApplicationRunner {
+
+    private static final List<String> TABLES = List.of("playlist_songs", "favorites", "play_history");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private SongPayloadConverter payloadConverter;
+
+    @Value("${music.songs.migrate-on-startup:true}")
+    private boolean enabled;
+
+    @Value("${music.songs.migrate-chunk:2000}")
+    private int chunk;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        encodeCatalog();
+        for (String table : TABLES) {
+            ensureNullable(table);
+            int moved = 0;
+            List<Object[]> rows;
+            do {
+                rows = jdbcTemplate.query("SELECT id, song_json FROM " + table
+                        + " WHERE song_ref IS NULL AND song_json IS NOT NULL LIMIT ?",
+                        (rs, i) -> new Object[] { rs.getLong(1), rs.getString(2) }, chunk);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<String> jsons = new ArrayList<>(rows.size());
+                for (Object[] row : rows) {
+                    jsons.add((String) row[1]);
+                }
+                List<Long> refs = songCatalogRepository.refsFor(jsons);
+                List<Object[]> updates = new ArrayList<>(rows.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    updates.add(new Object[] { refs.get(i), rows.get(i)[0] });
+                }
+                jdbcTemplate.batchUpdate("UPDATE " + table + " SET song_ref = ?, song_json = NULL WHERE id = ?", updates);
+                moved += rows.size();
+            } while (rows.size() == chunk);
+            if (moved > 0) {
+                log.info("Songs catalog migration: {} rows of {} now reference the catalog", moved, table);
+            }
+        }
+    }
+
+    private void encodeCatalog() {
+        ensureNullable("songs");
+        int encoded = 0;
+        List<Object[]> rows;
+        do {
+            rows = jdbcTemplate.query("SELECT id, song_json FROM songs WHERE payload IS NULL AND song_json IS NOT NULL LIMIT ?",
+                    (rs, i) -> new Object[] { payloadConverter.convertToDatabaseColumn(rs.getString(2)), rs.getLong(1) }, chunk);
+            if (rows.isEmpty()) {
+                break;
+            }
+            jdbcTemplate.batchUpdate("UPDATE songs SET payload = ?, song_json = NULL WHERE id = ?", rows);
+            encoded += rows.size();
+        } while (rows.size() == chunk);
+        if (encoded > 0) {
+            log.info("Songs catalog migration: {} catalog rows encoded", encoded);
+        }
+    }
+
+    // Tables created before the catalog have song_json NOT NULL, which schema update leaves as is.
+    private void ensureNullable(String table) {
+        List<String> nullable = jdbcTemplate.queryForList("SELECT IS_NULLABLE FROM information_schema.COLUMNS"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = 'song_json'",
+                String.class, table);
+        if (!nullable.isEmpty() && "NO".equals(nullable.get(0))) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " MODIFY song_json TEXT NULL");
+            log.info("Songs catalog migration: {}.song_json made nullable", table);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.musicsquare.repository.SongCatalogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes stored songs to a response without parsing them.
+ *
+ * Rows are read in keyset chunks of {@code chunk-rows}: each chunk is one query, fully read
+ * and its connection returned to the pool before any of it is written, so a slow client holds
+ * only the chunk in memory and no connection while it drains. The song JSON is copied into the
+ * output as raw JSON. The payload comes from the songs catalog joined in the same query
+ * (decoded from its stored encoding), or from the row's own song_json for rows written before
+ * the catalog. Extra fields such as uid are appended just before the closing brace of each
+ * object; a key that also exists in the stored JSON is therefore overridden for JSON.parse,
+ * which keeps the last occurrence, just like the old {@code Map.put} did.
+ */
+@Service
+public class SongJsonStreamer {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Value("${music.streaming.chunk-rows:500}")
+    private int chunkRows;
+
+    /** A favorite or play: its sort key and id (the keyset) and its song JSON. */
+    private static final class SongRow {
+        final long sortKey;
+        final long id;
+        final String json;
+
+        SongRow(long sortKey, long id, String json) {
+            this.sortKey = sortKey;
+            this.id = id;
+            this.json = json;
+        }
+    }
+
+    /** One row of the playlists join: the playlist, and one of its tracks unless it is empty. */
+    private static final class PlaylistRow {
+        long playlistId;
+        long playlistCreatedAt;
+        String name;
+        boolean isSync;
+        String platform;
+        String externalId;
+        boolean canDelete;
+        // Null for the single row of a playlist without tracks.
+        Long trackId;
+        long position;
+        boolean isLocalAdd;
+        String json;
+    }
+
+    /** The user's favorites as a JSON array of the stored songs, newest first. */
+    public void writeFavorites(Long userId, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            inChunks(Long.MAX_VALUE, (SongRow last, int limit) -> jdbcTemplate.query(
+                    "SELECT f.created_at, f.id, f.song_json, s.payload, s.song_json FROM favorites f"
+                            + " LEFT JOIN songs s ON s.id = f.song_ref"
+                            + " WHERE f.user_id = ? AND f.created_at <= ? AND (f.created_at < ? OR f.id < ?)"
+                            + " ORDER BY f.created_at DESC, f.id DESC LIMIT ?",
+                    (rs, i) -> new SongRow(rs.getLong(1), rs.getLong(2), songJson(rs, 3)),
+                    userId, sortKey(last), sortKey(last), id(last), limit),
+                    row -> writeSong(gen, row.json, null, null));
+            gen.writeEndArray();
+        }
+    }
+
+    /** The user's most recent plays as a JSON array of songs carrying their history uid. */
+    public void writeHistory(Long userId, int limit, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            inChunks(limit, (SongRow last, int rows) -> jdbcTemplate.query(
+                    "SELECT h.played_at, h.id, h.song_json, s.payload, s.song_json FROM play_history h"
+                            + " LEFT JOIN songs s ON s.id = h.song_ref"
+                            + " WHERE h.user_id = ? AND h.played_at <= ? AND (h.played_at < ? OR h.id < ?)"
+                            + " ORDER BY h.played_at DESC, h.id DESC LIMIT ?",
+                    (rs, i) -> new SongRow(rs.getLong(1), rs.getLong(2), songJson(rs, 3)),
+                    userId, sortKey(last), sortKey(last), id(last), rows),
+                    row -> writeSong(gen, row.json, row.id, null));
+            gen.writeEndArray();
+        }
+    }
+
+    /**
+     * All playlists of the user with their tracks, as GET /api/playlists returns them, read
+     * with one joined query per chunk, ordered by playlist so each playlist is written as its
+     * rows pass. A chunk continues after the last (playlist, track) of the one before.
+     */
+    public void writePlaylists(Long userId, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            long[] current = { Long.MIN_VALUE };
+            inChunks(Long.MAX_VALUE, (PlaylistRow last, int limit) -> {
+                StringBuilder sql = new StringBuilder("SELECT p.id, p.created_at, p.name, p.is_sync, p.platform,"
+                        + " p.external_id, p.can_delete, ps.id, ps.position, ps.is_local_add, ps.song_json,"
+                        + " s.payload, s.song_json"
+                        + " FROM playlists p LEFT JOIN playlist_songs ps ON ps.playlist_id = p.id"
+                        + " LEFT JOIN songs s ON s.id = ps.song_ref"
+                        + " WHERE p.user_id = ?");
+                List<Object> args = new ArrayList<>();
+                args.add(userId);
+                if (last != null) {
+                    sql.append(" AND (p.created_at < ? OR (p.created_at = ? AND (p.id < ?");
+                    args.addAll(List.of(last.playlistCreatedAt, last.playlistCreatedAt, last.playlistId));
+                    if (last.trackId != null) {
+                        // Rest of the playlist the last chunk ended in.
+                        sql.append(" OR (p.id = ? AND ps.position <= ? AND (ps.position < ? OR ps.id < ?))");
+                        args.addAll(List.of(last.playlistId, last.position, last.position, last.trackId));
+                    }
+                    sql.append(")))");
+                }
+                sql.append(" ORDER BY p.created_at DESC, p.id DESC, ps.position DESC, ps.id DESC LIMIT ?");
+                args.add(limit);
+                return jdbcTemplate.query(sql.toString(), (rs, i) -> {
+                    PlaylistRow row = new PlaylistRow();
+                    row.playlistId = rs.getLong(1);
+                    row.playlistCreatedAt = rs.getLong(2);
+                    row.name = rs.getString(3);
+                    row.isSync = rs.getInt(4) == 1;
+                    row.platform = rs.getString(5);
+                    row.externalId = rs.getString(6);
+                    row.canDelete = rs.getInt(7) == 1;
+                    long trackId = rs.getLong(8);
+                    row.trackId = rs.wasNull() ? null : trackId;
+                    row.position = rs.getLong(9);
+                    row.isLocalAdd = rs.getInt(10) == 1;
+                    row.json = songJson(rs, 11);
+                    return row;
+                }, args.toArray());
+            }, row -> {
+                if (row.playlistId != current[0]) {
+                    if (current[0] != Long.MIN_VALUE) {
+                        gen.writeEndArray();
+                        gen.writeEndObject();
+                    }
+                    current[0] = row.playlistId;
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", row.playlistId);
+                    gen.writeStringField("name", row.name);
+                    gen.writeBooleanField("is_sync", row.isSync);
+                    gen.writeStringField("platform", row.platform);
+                    gen.writeStringField("external_id", row.externalId);
+                    gen.writeBooleanField("can_delete", row.canDelete);
+                    gen.writeArrayFieldStart("tracks");
+                }
+                if (row.json != null) {
+                    writeSong(gen, row.json, row.trackId, row.isLocalAdd);
+                }
+            });
+            if (current[0] != Long.MIN_VALUE) {
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes one stored song object as an array element, appending {@code uid} and
+     * {@code is_local_add} when given. Rows without a payload or that are not a JSON
+     * object are skipped.
+     */
+    public static void writeSong(JsonGenerator gen, String json, Long uid, Boolean isLocalAdd) throws IOException {
+        if (json == null) {
+            return;
+        }
+        int start = 0;
+        int end = json.length() - 1;
+        while (start <= end && Character.isWhitespace(json.charAt(start))) {
+            start++;
+        }
+        while (end >= start && Character.isWhitespace(json.charAt(end))) {
+            end--;
+        }
+        if (start >= end || json.charAt(start) != '{' || json.charAt(end) != '}') {
+            return;
+        }
+        if (uid == null && isLocalAdd == null) {
+            gen.writeRawValue(json, start, end + 1 - start);
+            return;
+        }
+        // Everything up to (not including) the closing brace, then the extra fields.
+        gen.writeRawValue(json, start, end - start);
+        int last = end - 1;
+        while (last > start && Character.isWhitespace(json.charAt(last))) {
+            last--;
+        }
+        boolean empty = last == start;
+        if (uid != null) {
+            gen.writeRaw(empty ? "\"uid\":" : ",\"uid\":");
+            gen.writeRaw(Long.toString(uid));
+            empty = false;
+        }
+        if (isLocalAdd != null) {
+            gen.writeRaw(empty ? "\"is_local_add\":" : ",\"is_local_add\":");
+            gen.writeRaw(isLocalAdd ? "true" : "false");
+        }
+        gen.writeRaw('}');
+    }
+
+    // Columns from..from+2 are the row's own song_json, then the catalog's payload and song_json.
+    private String songJson(ResultSet rs, int from) throws SQLException {
+        String own = rs.getString(from);
+        return own != null ? own : songCatalogRepository.decode(rs.getBytes(from + 1), rs.getString(from + 2));
+    }
+
+    private static long sortKey(SongRow last) {
+        return last == null ? Long.MAX_VALUE : last.sortKey;
+    }
+
+    private static long id(SongRow last) {
+        return last == null ? Long.MAX_VALUE : last.id;
+    }
+
+    private interface ChunkQuery<T> {
+        List<T> next(T last, int limit);
+    }
+
+    private interface RowWriter<T> {
+        void write(T row) throws IOException;
+    }
+
+    /**
+     * Reads up to {@code max} rows, {@code chunkRows} per query, and writes each chunk after
+     * its query has returned the connection. {@code last} is null for the first chunk.
+     */
+    private <T> void inChunks(long max, ChunkQuery<T> query, RowWriter<T> writer) throws IOException {
+        int size = Math.max(1, chunkRows);
+        long done = 0;
+        T last = null;
+        while (done < max) {
+            int limit = (int) Math.min(size, max - done);
+            List<T> chunk = query.next(last, limit);
+            for (T row : chunk) {
+                writer.write(row);
+            }
+            done += chunk.size();
+            if (chunk.size() < limit) {
+                return;
+            }
+            last = chunk.get(chunk.size() - 1);
+        }
+    }
+}
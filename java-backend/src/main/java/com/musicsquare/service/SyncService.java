@@ -2,15 +2,14 @@ package com.musicsquare.service;
 
 import com.musicsquare.entity.ConnectedAccount;
 import com.musicsquare.entity.Playlist;
-import com.musicsquare.entity.PlaylistSong;
 import com.musicsquare.repository.ConnectedAccountRepository;
 import com.musicsquare.repository.PlaylistRepository;
-import com.musicsquare.repository.PlaylistSongRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -25,7 +24,10 @@ public class SyncService {
     private PlaylistRepository playlistRepository;
 
     @Autowired
-    private PlaylistSongRepository playlistSongRepository;
+    private PlaylistDiffService playlistDiffService;
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -55,7 +57,6 @@ public class SyncService {
             Playlist pl;
             if (existingPl.isPresent()) {
                 pl = existingPl.get();
-                playlistSongRepository.deleteByPlaylistId(pl.getId());
             } else {
                 pl = new Playlist();
                 pl.setUserId(userId);
@@ -68,8 +69,13 @@ public class SyncService {
                 String cleanName = cleanPrefix(plName);
                 pl.setName(prefix + cleanName);
                 playlistRepository.save(pl);
+                libraryChangeService.record(userId, LibraryChangeService.PLAYLIST, LibraryChangeService.INSERT,
+                        pl.getId());
             }
 
+            // An import replaces the playlist's content entirely (manual additions included),
+            // applied as a diff so unchanged tracks are not rewritten.
+            List<String> jsons = new ArrayList<>();
             if (tracks != null && !tracks.isEmpty()) {
                 importedCount++;
                 for (Map<String, Object> track : tracks) {
@@ -79,18 +85,13 @@ public class SyncService {
                         if (lrc instanceof String && ((String) lrc).startsWith("http")) {
                             track.remove("lrc");
                         }
-
-                        PlaylistSong ps = new PlaylistSong();
-                        ps.setPlaylistId(pl.getId());
-                        ps.setSongJson(objectMapper.writeValueAsString(track));
-                        ps.setIsLocalAdd(0);
-                        ps.setCreatedAt(System.currentTimeMillis());
-                        playlistSongRepository.save(ps);
+                        jsons.add(objectMapper.writeValueAsString(track));
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
                 }
             }
+            playlistDiffService.apply(pl, jsons, false);
         }
         return importedCount;
     }
@@ -0,0 +1,212 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Fetches toplists (billboards) and their tracks from the platforms, in the shapes
+ * js/api.js builds in getBillboardList / getBillboardDetail.
+ */
+@Service
+public class ToplistService {
+
+    private static final String BROWSER_UA = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+    private static final String QQ_MUSICU = "https://u.y.qq.com/cgi-bin/musicu.fcg";
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${music.netease.api-base:https://netease-cloud-music-api-eight-rho.vercel.app}")
+    private String neteaseApiBase;
+
+    /** Toplists of a platform as {id, name, pic, updateFrequency}. */
+    public List<Map<String, Object>> fetchList(String source) {
+        switch (source) {
+            case "netease":
+                return neteaseList();
+            case "qq":
+                return qqList();
+            case "kuwo":
+                return kuwoList();
+            default:
+                throw new IllegalArgumentException("Unsupported platform: " + source);
+        }
+    }
+
+    /** Up to {@code limit} tracks of one toplist, in chart order. */
+    public List<Map<String, Object>> fetchDetail(String source, String id, int limit) {
+        switch (source) {
+            case "netease":
+                return neteaseDetail(id, limit);
+            case "qq":
+                return qqDetail(id, limit);
+            case "kuwo":
+                return kuwoDetail(id, limit);
+            default:
+                throw new IllegalArgumentException("Unsupported platform: " + source);
+        }
+    }
+
+    private List<Map<String, Object>> neteaseList() {
+        Map<String, Object> json = getJson(neteaseApiBase + "/toplist", neteaseHeaders());
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map<String, Object> item : maps(json != null ? json.get("list") : null)) {
+            list.add(toplist(String.valueOf(item.get("id")), item.get("name"), item.get("coverImgUrl"),
+                    item.get("updateFrequency") != null ? item.get("updateFrequency").toString() : ""));
+        }
+        return list;
+    }
+
+    private List<Map<String, Object>> qqList() {
+        Map<String, Object> json = postQQ("toplist", "GetAll", Map.of());
+        Map<String, Object> toplist = json != null ? TrackMapper.asMap(json.get("toplist")) : null;
+        Map<String, Object> data = toplist != null ? TrackMapper.asMap(toplist.get("data")) : null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map<String, Object> group : maps(data != null ? data.get("group") : null)) {
+            for (Map<String, Object> item : maps(group.get("toplist"))) {
+                Object pic = item.get("headPicUrl") != null ? item.get("headPicUrl") : item.get("frontPicUrl");
+                Object updateType = item.get("updateType");
+                list.add(toplist(String.valueOf(item.get("topId")), item.get("title"), pic,
+                        updateType instanceof Number && ((Number) updateType).intValue() == 1 ? "每日更新" : "每周更新"));
+            }
+        }
+        return list;
+    }
+
+    private List<Map<String, Object>> kuwoList() {
+        Map<String, Object> json = getJson("http://qukudata.kuwo.cn/q.k?op=query&cont=tree&node=2&pn=0&rn=1000&fmt=json&level=2",
+                browserHeaders());
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map<String, Object> item : maps(json != null ? json.get("child") : null)) {
+            if ("1".equals(String.valueOf(item.get("source")))) {
+                // Cover stays the raw kuwo URL; the frontend routes it through /api/proxy.
+                list.add(toplist(String.valueOf(item.get("sourceid")), item.get("name"), item.get("pic"),
+                        item.get("info") != null ? item.get("info").toString() : "定期更新"));
+            }
+        }
+        return list;
+    }
+
+    private List<Map<String, Object>> neteaseDetail(String id, int limit) {
+        Map<String, Object> json = getJson(neteaseApiBase + "/playlist/detail?id=" + id, neteaseHeaders());
+        Map<String, Object> playlist = json != null ? TrackMapper.asMap(json.get("playlist")) : null;
+        List<String> ids = new ArrayList<>();
+        for (Map<String, Object> t : maps(playlist != null ? playlist.get("trackIds") : null)) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(String.valueOf(t.get("id")));
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Object> detail = getJson(neteaseApiBase + "/song/detail?ids=" + String.join(",", ids),
+                neteaseHeaders());
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        for (Map<String, Object> song : maps(detail != null ? detail.get("songs") : null)) {
+            tracks.add(TrackMapper.neteaseDetail(song));
+        }
+        return tracks;
+    }
+
+    private List<Map<String, Object>> qqDetail(String id, int limit) {
+        Map<String, Object> json = postQQ("req", "GetDetail",
+                Map.of("topid", Integer.parseInt(id), "num", limit, "period", ""));
+        Map<String, Object> req = json != null ? TrackMapper.asMap(json.get("req")) : null;
+        Map<String, Object> data = req != null ? TrackMapper.asMap(req.get("data")) : null;
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        for (Map<String, Object> item : maps(data != null ? data.get("songInfoList") : null)) {
+            tracks.add(TrackMapper.qqSongInfo(item));
+        }
+        return tracks;
+    }
+
+    private List<Map<String, Object>> kuwoDetail(String id, int limit) {
+        String url = "http://kbangserver.kuwo.cn/ksong.s?from=pc&fmt=json&pn=0&rn=" + limit
+                + "&type=bang&data=content&id=" + id + "&show_copyright_off=0&pcmp4=1&isbang=1";
+        Map<String, Object> json = getJson(url, browserHeaders());
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        for (Map<String, Object> item : maps(json != null ? json.get("musiclist") : null)) {
+            tracks.add(TrackMapper.kuwoMusic(item));
+        }
+        return tracks;
+    }
+
+    private Map<String, Object> postQQ(String key, String method, Map<String, Object> param) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("comm", Map.of("cv", 4747474, "ct", 24, "format", "json",
+                "inCharset", "utf-8", "outCharset", "utf-8", "uin", 0));
+        body.put(key, Map.of("module", "musicToplist.ToplistInfoServer", "method", method, "param", param));
+        HttpHeaders headers = browserHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Referer", "https://y.qq.com/");
+        String response = restTemplate.exchange(URI.create(QQ_MUSICU), HttpMethod.POST,
+                new HttpEntity<>(body, headers), String.class).getBody();
+        return parse(response);
+    }
+
+    private static Map<String, Object> toplist(String id, Object name, Object pic, String updateFrequency) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", id);
+        m.put("name", name != null ? name.toString() : "未知榜单");
+        m.put("pic", pic != null ? pic.toString() : "");
+        m.put("updateFrequency", updateFrequency);
+        return m;
+    }
+
+    private static List<Map<String, Object>> maps(Object list) {
+        if (!(list instanceof List)) {
+            return List.of();
+        }
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Object o : (List<?>) list) {
+            Map<String, Object> m = TrackMapper.asMap(o);
+            if (m != null) {
+                out.add(m);
+            }
+        }
+        return out;
+    }
+
+    private HttpHeaders neteaseHeaders() {
+        HttpHeaders headers = browserHeaders();
+        headers.set("Referer", "https://music.163.com/");
+        return headers;
+    }
+
+    private static HttpHeaders browserHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", BROWSER_UA);
+        return headers;
+    }
+
+    private Map<String, Object> getJson(String url, HttpHeaders headers) {
+        return parse(restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getBody());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(String body) {
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unparseable toplist response", e);
+        }
+    }
+}
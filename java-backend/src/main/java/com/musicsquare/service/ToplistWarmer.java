@@ -0,0 +1,211 @@
+package com.musicsquare.service;
+
+import com.musicsquare.cache.TtlCache;
+import com.musicsquare.config.ToplistProperties;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the configured toplists refreshed in the background so users are served a ready
+ * snapshot instead of waiting on the platforms.
+ *
+ * Every snapshot has its own jittered next-refresh time; a periodic tick starts the due ones
+ * on the upstream executor, at most {@code maxConcurrency} at a time. Nothing is fetched
+ * during startup: the first refreshes are spread over the initial window once the
+ * application is ready, and until then requests fall back to an on-demand fetch. A failed
+ * refresh keeps serving the previous snapshot.
+ */
+@Service
+public class ToplistWarmer {
+
+    @Autowired
+    private ToplistService toplistService;
+
+    @Autowired
+    private ToplistProperties props;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    private Executor upstreamExecutor;
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private TtlCache<String, List<Map<String, Object>>> onDemand;
+
+    private Semaphore slots;
+
+    private volatile boolean ready;
+
+    private static final class Snapshot {
+        final String source;
+        final String id;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile List<Map<String, Object>> data;
+        volatile long fetchedAt;
+        volatile long nextRefreshAt;
+        volatile long lastRefreshMs;
+        volatile long refreshes;
+        volatile long failures;
+        volatile String lastError;
+
+        Snapshot(String source, String id) {
+            this.source = source;
+            this.id = id;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        onDemand = new TtlCache<>(props.getOnDemandMaxEntries(), props.getOnDemandTtlSeconds() * 1000);
+        slots = new Semaphore(Math.max(1, props.getMaxConcurrency()));
+        props.getWarm().forEach((source, ids) -> {
+            snapshots.put(key(source, null), new Snapshot(source, null));
+            for (String id : ids) {
+                snapshots.put(key(source, id), new Snapshot(source, id));
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        long now = System.currentTimeMillis();
+        long spread = Math.max(1, props.getInitialSpreadSeconds() * 1000);
+        for (Snapshot s : snapshots.values()) {
+            s.nextRefreshAt = now + ThreadLocalRandom.current().nextLong(spread);
+        }
+        ready = true;
+    }
+
+    @Scheduled(fixedDelayString = "${music.toplist.tick-ms:5000}")
+    public void tick() {
+        if (!ready || !props.isWarmEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Snapshot s : snapshots.values()) {
+            if (now < s.nextRefreshAt || s.refreshing.get()) {
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                // Concurrency cap reached; the remaining due snapshots wait for the next tick.
+                return;
+            }
+            if (!s.refreshing.compareAndSet(false, true)) {
+                slots.release();
+                continue;
+            }
+            upstreamExecutor.execute(() -> {
+                try {
+                    refresh(s);
+                } finally {
+                    s.refreshing.set(false);
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    /** Toplists of a platform; served from the warm snapshot when there is one. */
+    public Map<String, Object> getList(String source) {
+        return view(source, null);
+    }
+
+    /** Tracks of one toplist; served from the warm snapshot when there is one. */
+    public Map<String, Object> getDetail(String source, String id) {
+        return view(source, id);
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> warm = new TreeMap<>();
+        snapshots.forEach((key, s) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("size", s.data != null ? s.data.size() : 0);
+            m.put("ageSeconds", s.fetchedAt > 0 ? (now - s.fetchedAt) / 1000 : null);
+            m.put("lastRefreshMs", s.lastRefreshMs);
+            m.put("refreshes", s.refreshes);
+            m.put("failures", s.failures);
+            m.put("nextRefreshInSeconds", ready ? Math.max(0, (s.nextRefreshAt - now) / 1000) : null);
+            if (s.lastError != null) {
+                m.put("lastError", s.lastError);
+            }
+            warm.put(key, m);
+        });
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("warm", warm);
+        result.put("onDemand", onDemand.stats());
+        return result;
+    }
+
+    private Map<String, Object> view(String source, String id) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Snapshot s = snapshots.get(key(source, id));
+        if (s != null && s.data != null) {
+            result.put(id == null ? "list" : "tracks", s.data);
+            result.put("fetchedAt", s.fetchedAt);
+            result.put("warm", true);
+            return result;
+        }
+        List<Map<String, Object>> data = onDemand.get(key(source, id), k -> fetch(source, id));
+        result.put(id == null ? "list" : "tracks", data != null ? data : List.of());
+        result.put("warm", false);
+        return result;
+    }
+
+    private void refresh(Snapshot s) {
+        long start = System.currentTimeMillis();
+        long interval = props.getRefreshSeconds() * 1000;
+        try {
+            List<Map<String, Object>> data = fetch(s.source, s.id);
+            long now = System.currentTimeMillis();
+            // An empty answer is more likely an upstream hiccup than an empty chart.
+            if (data.isEmpty() && s.data != null) {
+                throw new IllegalStateException("empty response");
+            }
+            s.data = data;
+            s.fetchedAt = now;
+            s.lastError = null;
+        } catch (RuntimeException e) {
+            s.failures++;
+            s.lastError = e.getMessage();
+            // Retry sooner than a full interval, still jittered.
+            interval = interval / 4;
+        } finally {
+            long now = System.currentTimeMillis();
+            s.refreshes++;
+            s.lastRefreshMs = now - start;
+            s.nextRefreshAt = now + jittered(interval);
+        }
+    }
+
+    private List<Map<String, Object>> fetch(String source, String id) {
+        return id == null
+                ? toplistService.fetchList(source)
+                : toplistService.fetchDetail(source, id, props.getDetailLimit());
+    }
+
+    private long jittered(long interval) {
+        double spread = props.getJitterPercent() / 100.0;
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * spread;
+        return Math.max(1000, (long) (interval * factor));
+    }
+
+    private static String key(String source, String id) {
+        return id == null ? source : source + ":" + id;
+    }
+}
@@ -0,0 +1,141 @@
+package com.musicsquare.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts raw platform payloads into the track shape the frontend works with
+ * ({id, songId, title, artist, album, cover, source[, duration]}), mirroring js/api.js.
+ */
+public final class TrackMapper {
+
+    private TrackMapper() {
+    }
+
+    /** Item of netease /search (result.songs). */
+    public static Map<String, Object> neteaseSearch(Map<String, Object> item) {
+        String sid = String.valueOf(item.get("id"));
+        Map<String, Object> album = asMap(item.get("album"));
+        Map<String, Object> track = track("netease", sid,
+                str(item.get("name"), "未知歌曲"),
+                names(item.get("artists"), ", ", "未知歌手"),
+                album != null ? str(album.get("name"), "-") : "-",
+                album != null ? str(album.get("picUrl"), "") : "");
+        track.put("duration", item.get("duration") instanceof Number
+                ? ((Number) item.get("duration")).longValue() / 1000 : 0);
+        return track;
+    }
+
+    /** Item of netease /song/detail (songs). */
+    public static Map<String, Object> neteaseDetail(Map<String, Object> item) {
+        String sid = String.valueOf(item.get("id"));
+        Map<String, Object> al = asMap(item.get("al"));
+        return track("netease", sid,
+                str(item.get("name"), "未知歌曲"),
+                names(item.get("ar"), ", ", "未知歌手"),
+                al != null ? str(al.get("name"), "-") : "-",
+                al != null ? str(al.get("picUrl"), "") : "");
+    }
+
+    /** Item of QQ search_for_qq_cp (data.song.list) or playlist songlist. */
+    public static Map<String, Object> qqSong(Map<String, Object> item) {
+        String sid = str(item.get("songmid"), "");
+        String albumMid = str(item.get("albummid"), "");
+        Map<String, Object> track = track("qq", sid,
+                str(item.get("songname"), "未知歌曲"),
+                names(item.get("singer"), ", ", "未知歌手"),
+                str(item.get("albumname"), "-"),
+                qqCover(albumMid));
+        if (item.get("interval") instanceof Number) {
+            track.put("duration", ((Number) item.get("interval")).longValue());
+        }
+        return track;
+    }
+
+    /** Item of QQ toplist detail (req.data.songInfoList). */
+    public static Map<String, Object> qqSongInfo(Map<String, Object> item) {
+        Map<String, Object> album = asMap(item.get("album"));
+        return track("qq", str(item.get("mid"), ""),
+                str(item.get("name"), "未知歌曲"),
+                names(item.get("singer"), ", ", "未知歌手"),
+                album != null ? str(album.get("name"), "-") : "-",
+                album != null ? qqCover(str(album.get("mid"), "")) : "");
+    }
+
+    /** Item of kuwo searchMusicBykeyWord (abslist). Cover is the raw kuwo URL. */
+    public static Map<String, Object> kuwoSearch(Map<String, Object> item) {
+        String sid = str(item.get("MUSICRID"), "").replace("MUSIC_", "");
+        String pic = str(item.get("web_albumpic_short"), "");
+        Map<String, Object> track = track("kuwo", sid,
+                str(item.get("SONGNAME"), "未知歌曲"),
+                item.get("ARTIST") != null ? item.get("ARTIST").toString().replace("&", ", ") : "未知歌手",
+                str(item.get("ALBUM"), "-"),
+                pic.isEmpty() ? "" : "https://img1.kuwo.cn/star/albumcover/" + pic);
+        long duration = 0;
+        try {
+            duration = Long.parseLong(str(item.get("DURATION"), "0"));
+        } catch (NumberFormatException ignored) {
+        }
+        track.put("duration", duration);
+        return track;
+    }
+
+    /** Item of kuwo playlist / toplist musiclist. Cover is the raw kuwo URL. */
+    public static Map<String, Object> kuwoMusic(Map<String, Object> item) {
+        String pic = str(item.get("pic"), "");
+        return track("kuwo", String.valueOf(item.get("id")),
+                str(item.get("name"), "未知歌曲"),
+                str(item.get("artist"), "未知歌手"),
+                str(item.get("album"), "-"),
+                pic.replace("_120.", "_500."));
+    }
+
+    private static Map<String, Object> track(String source, String sid, String title, String artist,
+            String album, String cover) {
+        Map<String, Object> track = new LinkedHashMap<>();
+        track.put("id", source + "-" + sid);
+        track.put("songId", sid);
+        track.put("title", title);
+        track.put("artist", artist);
+        track.put("album", album);
+        track.put("cover", cover);
+        track.put("source", source);
+        return track;
+    }
+
+    private static String qqCover(String albumMid) {
+        return albumMid.isEmpty() ? "" : "https://y.gtimg.cn/music/photo_new/T002R300x300M000" + albumMid + ".jpg";
+    }
+
+    private static String names(Object list, String separator, String fallback) {
+        if (!(list instanceof List) || ((List<?>) list).isEmpty()) {
+            return fallback;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object o : (List<?>) list) {
+            Map<String, Object> m = asMap(o);
+            if (m == null || m.get("name") == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(m.get("name"));
+        }
+        return sb.length() > 0 ? sb.toString() : fallback;
+    }
+
+    private static String str(Object value, String fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        String s = value.toString();
+        return s.isEmpty() ? fallback : s;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asMap(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : null;
+    }
+}
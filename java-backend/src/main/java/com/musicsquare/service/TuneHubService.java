@@ -0,0 +1,272 @@
+package com.musicsquare.service;
+
+import com.musicsquare.cache.TtlCache;
+import com.musicsquare.resilience.UpstreamUnavailableException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+@Slf4j
+@Service
+public class TuneHubService {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Value("${music.netease.api-base:https://netease-cloud-music-api-eight-rho.vercel.app}")
+    private String neteaseApiBase;
+
+    // Must stay below the lifetime of the signed CDN URLs the platforms hand out.
+    @Value("${music.parse.cache.ttl-seconds:600}")
+    private long parseTtlSeconds;
+
+    @Value("${music.parse.cache.max-entries:10000}")
+    private long parseMaxEntries;
+
+    @Value("${music.parse.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @Value("${music.parse.batch.deadline-ms:8000}")
+    private long batchDeadlineMs;
+
+    // netease /song/url accepts comma-separated ids; keep each URL a sensible length.
+    @Value("${music.parse.batch.netease-chunk-size:100}")
+    private int neteaseChunkSize;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    private Executor upstreamExecutor;
+
+    private TtlCache<String, Map<String, Object>> parseCache;
+
+    @PostConstruct
+    public void init() {
+        parseCache = new TtlCache<>(parseMaxEntries, parseTtlSeconds * 1000);
+    }
+
+    /**
+     * Resolves the play URL payload for one song. Results are cached per platform, id and
+     * the bitrate asked of netease; concurrent misses for the same key share a single upstream
+     * call. A song without a url (unavailable or blocked) is not cached.
+     */
+    public Map<String, Object> parse(String platform, String id, String quality) {
+        Map<String, Object> cached = parseCache.get(cacheKey(platform, id, quality),
+                k -> loadParse(platform, id, quality));
+        return cached != null ? cached : Map.of("url", "");
+    }
+
+    /**
+     * Resolves many songs at once. Cached items are answered immediately, netease ids are
+     * grouped into comma-separated /song/url calls and everything else is resolved one by one;
+     * the upstream work runs on at most {@code batchParallelism} workers and stops at the
+     * deadline. The result keeps the request order and reports failures per item.
+     */
+    public List<Map<String, Object>> parseBatch(List<Map<String, Object>> items, String quality) {
+        int n = items.size();
+        AtomicReferenceArray<Map<String, Object>> results = new AtomicReferenceArray<>(n);
+        Map<String, List<Integer>> neteaseIds = new LinkedHashMap<>();
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> item = items.get(i);
+            String platform = item.get("platform") != null ? item.get("platform").toString() : null;
+            String id = item.get("id") != null ? item.get("id").toString() : null;
+            if (platform == null || id == null) {
+                results.set(i, batchError(platform, id, "Missing platform or id"));
+                continue;
+            }
+            Map<String, Object> cached = parseCache.getIfPresent(cacheKey(platform, id, quality));
+            if (cached != null) {
+                results.set(i, batchResult(platform, id, cached));
+            } else if ("netease".equals(platform)) {
+                neteaseIds.computeIfAbsent(id, k -> new ArrayList<>()).add(i);
+            } else if ("kuwo".equals(platform)) {
+                int index = i;
+                tasks.add(() -> {
+                    // The probe above already counted the miss; load and store like the netease chunks do.
+                    Map<String, Object> data = loadParse(platform, id, quality);
+                    if (data != null) {
+                        parseCache.put(cacheKey(platform, id, quality), data);
+                    }
+                    results.set(index, data == null
+                            ? batchError(platform, id, "Unable to resolve url")
+                            : batchResult(platform, id, data));
+                });
+            } else {
+                results.set(i, batchError(platform, id, "Unsupported platform"));
+            }
+        }
+
+        List<String> ids = new ArrayList<>(neteaseIds.keySet());
+        for (int from = 0; from < ids.size(); from += neteaseChunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + neteaseChunkSize));
+            tasks.add(() -> resolveNeteaseChunk(chunk, neteaseIds, quality, results));
+        }
+
+        AtomicBoolean expired = new AtomicBoolean();
+        int workers = Math.min(batchParallelism, tasks.size());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(() -> {
+                Runnable task;
+                while (!expired.get() && (task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // The task's items stay empty and are reported as failed below.
+                        log.warn("Batch play url task failed", e);
+                    }
+                }
+            }, upstreamExecutor);
+        }
+        try {
+            CompletableFuture.allOf(running).get(batchDeadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            expired.set(true);
+        } catch (InterruptedException e) {
+            expired.set(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Workers swallow task failures; nothing to report here.
+        }
+
+        List<Map<String, Object>> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> r = results.get(i);
+            if (r == null) {
+                Map<String, Object> item = items.get(i);
+                r = batchError(String.valueOf(item.get("platform")), String.valueOf(item.get("id")),
+                        expired.get() ? "Deadline exceeded" : "Unable to resolve url");
+            }
+            out.add(r);
+        }
+        return out;
+    }
+
+    private void resolveNeteaseChunk(List<String> chunk, Map<String, List<Integer>> positions, String quality,
+            AtomicReferenceArray<Map<String, Object>> results) {
+        String url = neteaseApiBase + "/song/url?id=" + String.join(",", chunk) + "&br=" + neteaseBitrate(quality);
+        Map res = restTemplate.getForObject(url, Map.class);
+        if (res == null || !(res.get("data") instanceof List)) {
+            return;
+        }
+        for (Object o : (List<?>) res.get("data")) {
+            if (!(o instanceof Map) || ((Map<?, ?>) o).get("id") == null) {
+                continue;
+            }
+            String id = String.valueOf(((Map<?, ?>) o).get("id"));
+            List<Integer> indexes = positions.get(id);
+            if (indexes == null || !hasUrl(o)) {
+                // No url (unavailable or blocked): left empty, so it is reported as failed and not cached.
+                continue;
+            }
+            // Same shape as a single /parse call, so the entry is shared with it.
+            Map<String, Object> data = Map.of("data", List.of(o));
+            parseCache.put(cacheKey("netease", id, quality), data);
+            for (int index : indexes) {
+                results.set(index, batchResult("netease", id, data));
+            }
+        }
+    }
+
+    private static Map<String, Object> batchResult(String platform, String id, Map<String, Object> data) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("platform", platform);
+        r.put("id", id);
+        r.put("data", data);
+        return r;
+    }
+
+    private static Map<String, Object> batchError(String platform, String id, String error) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("platform", platform);
+        r.put("id", id);
+        r.put("error", error);
+        return r;
+    }
+
+    public Map<String, Object> parseCacheStats() {
+        return parseCache.stats();
+    }
+
+    /**
+     * Cache key of a resolution. Only netease is asked for a bitrate; the kuwo URL is the same
+     * whatever quality was requested, so it is cached once.
+     */
+    private static String cacheKey(String platform, String id, String quality) {
+        return "netease".equals(platform) ? platform + ":" + id + ":" + neteaseBitrate(quality) : platform + ":" + id;
+    }
+
+    // The player's quality names mapped to the br parameter of netease /song/url (999000 is its lossless default).
+    private static int neteaseBitrate(String quality) {
+        if ("128k".equals(quality)) {
+            return 128000;
+        }
+        if ("320k".equals(quality)) {
+            return 320000;
+        }
+        return 999000;
+    }
+
+    // netease lists unavailable and copyright-blocked songs with url null.
+    private static boolean hasUrl(Object entry) {
+        Object url = entry instanceof Map ? ((Map<?, ?>) entry).get("url") : null;
+        return url != null && !url.toString().isEmpty();
+    }
+
+    private Map<String, Object> loadParse(String platform, String id, String quality) {
+        if ("netease".equals(platform)) {
+            try {
+                // Proxy to Netease Cloud Music API (public instance)
+                String url = neteaseApiBase + "/song/url?id=" + id + "&br=" + neteaseBitrate(quality);
+                Map res = restTemplate.getForObject(url, Map.class);
+                if (res != null && res.get("data") instanceof List && !((List<?>) res.get("data")).isEmpty()
+                        && hasUrl(((List<?>) res.get("data")).get(0))) {
+                    return Map.of("data", res.get("data"));
+                }
+            } catch (UpstreamUnavailableException e) {
+                // Breaker open or limit reached: answer "no url" straight away.
+            } catch (Exception e) {
+                log.warn("Netease play url lookup failed for {}", id, e);
+            }
+        } else if ("kuwo".equals(platform)) {
+            // Simple fallback for Kuwo
+            try {
+                String url = "http://www.kuwo.cn/api/v1/www/music/playUrl?mid=" + id + "&type=music&httpsStatus=1";
+                HttpHeaders headers = new HttpHeaders();
+                headers.set("User-Agent", "Mozilla/5.0");
+                restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+                // Kuwo's own response does not match what api.js expects (json.data.url),
+                // so hand back the older stable anti-server URL in the standard { url } shape.
+                return Map.of("url", "http://antiserver.kuwo.cn/anti.s?format=mp3&rid=MUSIC_" + id
+                        + "&response=url&type=convert_url3");
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        // Failures, songs without a url and unsupported platforms are not cached
+        return null;
+    }
+}
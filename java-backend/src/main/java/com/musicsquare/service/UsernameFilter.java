@@ -0,0 +1,232 @@
+package com.musicsquare.service;
+
+import com.musicsquare.cache.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Bloom filter over all usernames, so probes for names that do not exist (the
+ * check-user calls made while someone types) are answered without a query.
+ *
+ * Names are folded before hashing: compatibility forms and accents removed, ignorable
+ * characters dropped, the Latin letters that utf8mb4_unicode_ci expands or treats as a base
+ * letter (ß = ss, æ = ae, ø = o, ...) rewritten, lower case, trailing spaces cut. That mirrors
+ * the collation users.username is pinned to (see User and mysql_schema.sql) only for plain
+ * ASCII, so the filter answers just for names that fold to printable ASCII; any other probe
+ * goes to the database, whose answer is authoritative. Under another collation the fold could
+ * miss an equivalence and report a taken name as free, so the filter is not loaded at all when
+ * the column's collation is not the pinned one.
+ *
+ * The filter is filled by a streaming scan of users after startup; until then every probe
+ * goes to the database. Registered and renamed names are added as they are stored; old
+ * names of renamed users stay in the filter as harmless false positives. Once the filter
+ * holds more names than it was sized for it is rebuilt in the background, twice as large;
+ * names added during a rebuild go into both filters.
+ */
+@Slf4j
+@Component
+public class UsernameFilter {
+
+    static final String COLLATION = "utf8mb4_unicode_ci";
+
+    // Letters without a canonical decomposition that the collation still equates with ASCII.
+    private static final Map<Character, String> LATIN_EXPANSIONS = Map.of(
+            '\u00df', "ss", '\u00e6', "ae", '\u0153', "oe", '\u00fe', "th", '\u00f8', "o",
+            '\u0111', "d", '\u00f0', "d", '\u0142', "l", '\u0131', "i", '\u0127', "h");
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${music.auth.bloom.enabled:true}")
+    private boolean enabled;
+
+    @Value("${music.auth.bloom.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${music.auth.bloom.fpp:0.01}")
+    private double fpp;
+
+    private JdbcTemplate cursorTemplate;
+    private volatile String columnCollation;
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter loading;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong definiteNegatives = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong dbChecks = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        // Schema update does not change the collation of an existing column.
+        List<String> collation = cursorTemplate.queryForList("SELECT COLLATION_NAME FROM information_schema.COLUMNS"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'users' AND COLUMN_NAME = 'username'",
+                String.class);
+        columnCollation = collation.isEmpty() ? null : collation.get(0);
+        if (!COLLATION.equals(columnCollation)) {
+            log.warn("users.username uses collation {}, not {}; the username filter stays off and probes go to the"
+                    + " database", columnCollation, COLLATION);
+            return;
+        }
+        rebuild(expectedInsertions);
+    }
+
+    /** False only if no user has (a name that the database treats as equal to) this name. */
+    public boolean mightExist(String username) {
+        probes.incrementAndGet();
+        String key = fold(username);
+        if (!isPlain(key)) {
+            bypassed.incrementAndGet();
+            return true;
+        }
+        BloomFilter f = filter;
+        if (f == null || f.mightContain(key)) {
+            return true;
+        }
+        definiteNegatives.incrementAndGet();
+        return false;
+    }
+
+    /** Counts the outcome of a database lookup that followed a positive probe. */
+    public void recordLookup(boolean found) {
+        dbChecks.incrementAndGet();
+        if (found) {
+            dbHits.incrementAndGet();
+        }
+    }
+
+    /** Adds a name that has just been stored. */
+    public void add(String username) {
+        if (!enabled) {
+            return;
+        }
+        String key = fold(username);
+        BloomFilter f = filter;
+        if (f != null) {
+            f.put(key);
+        }
+        BloomFilter next = loading;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${music.auth.bloom.check-interval-ms:60000}")
+    public void checkCapacity() {
+        BloomFilter f = filter;
+        if (f != null && f.entries() > f.expectedEntries()) {
+            rebuild(f.entries() * 2);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        BloomFilter f = filter;
+        m.put("enabled", enabled);
+        m.put("loaded", f != null);
+        m.put("collation", columnCollation);
+        m.put("targetFpp", fpp);
+        if (f != null) {
+            m.put("entries", f.entries());
+            m.put("capacity", f.expectedEntries());
+            m.put("bits", f.bits());
+            m.put("hashes", f.hashes());
+            m.put("estimatedFpp", f.estimatedFpp());
+        }
+        long checks = dbChecks.get();
+        m.put("probes", probes.get());
+        m.put("definiteNegatives", definiteNegatives.get());
+        m.put("bypassed", bypassed.get());
+        m.put("dbChecks", checks);
+        m.put("dbHits", dbHits.get());
+        // Share of database lookups that found nothing, i.e. were caused by a false positive.
+        m.put("observedFalsePositiveShare", checks == 0 ? 0.0 : (double) (checks - dbHits.get()) / checks);
+        m.put("rebuilds", rebuilds.get());
+        return m;
+    }
+
+    static String fold(String username) {
+        String s = Normalizer.normalize(username, Normalizer.Form.NFKD).replaceAll("[\\p{M}\\p{Cc}\\p{Cf}]", "");
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String expansion = LATIN_EXPANSIONS.get(Character.toLowerCase(c));
+            if (expansion != null) {
+                sb.append(expansion);
+            } else {
+                sb.append(c);
+            }
+        }
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return sb.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    /** True if every character of a folded name is printable ASCII. */
+    static boolean isPlain(String folded) {
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuild(long capacity) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Long count = cursorTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+            BloomFilter next = new BloomFilter(Math.max(capacity, count != null ? count * 2 : 0), fpp);
+            // Set before the scan: a name stored after the scan's snapshot is added here by add().
+            loading = next;
+            long start = System.nanoTime();
+            cursorTemplate.query("SELECT username FROM users", (RowCallbackHandler) rs -> next.put(fold(rs.getString(1))));
+            filter = next;
+            rebuilds.incrementAndGet();
+            log.info("Username filter loaded: {} names, {} bits, {} hashes, in {} ms", next.entries(), next.bits(),
+                    next.hashes(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Could not load the username filter; probes go to the database", e);
+        } finally {
+            loading = null;
+            rebuilding.set(false);
+        }
+    }
+}
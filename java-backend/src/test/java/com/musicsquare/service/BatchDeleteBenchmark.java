@@ -0,0 +1,99 @@
+package com.musicsquare.service;
+
+import com.musicsquare.entity.PlayHistory;
+import com.musicsquare.entity.Playlist;
+import com.musicsquare.repository.BulkWriteRepository;
+import com.musicsquare.repository.PlayHistoryRepository;
+import com.musicsquare.repository.PlaylistRepository;
+import com.musicsquare.repository.PlaylistSongRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times a multi-select delete of {@code ids} rows, the old way (one derived deleteBy per id,
+ * which loads each entity before removing it) against the chunked IN delete, for play history
+ * and playlist songs. Uses the scratch user and a playlist of it that are removed afterwards.
+ */
+class BatchDeleteBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private PlaylistService playlistService;
+
+    @Autowired
+    private PlayHistoryRepository playHistoryRepository;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private PlaylistSongRepository playlistSongRepository;
+
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${music.batch-delete.benchmark.ids:1000}")
+    private int count;
+
+    @Test
+    void run() {
+        Playlist playlist = new Playlist();
+        playlist.setUserId(SCRATCH_ID);
+        playlist.setName("batch-delete-benchmark");
+        playlist.setCreatedAt(System.currentTimeMillis());
+        Long playlistId = playlistRepository.save(playlist).getId();
+        try {
+            List<Long> ids = insertHistory();
+            long ms = time(() -> transactionTemplate.executeWithoutResult(status ->
+                    ids.forEach(id -> playHistoryRepository.deleteByUserIdAndId(SCRATCH_ID, id))));
+            log.info("Batch delete benchmark [history, per id]: {} rows in {} ms", count, ms);
+
+            List<Long> again = insertHistory();
+            List<String> asStrings = new ArrayList<>();
+            again.forEach(id -> asStrings.add(id.toString()));
+            int[] removed = new int[1];
+            ms = time(() -> removed[0] = historyService.batchDeleteHistory(SCRATCH_ID, asStrings));
+            log.info("Batch delete benchmark [history, chunked IN]: {} rows in {} ms", removed[0], ms);
+
+            List<Long> uids = insertSongs(playlistId);
+            ms = time(() -> transactionTemplate.executeWithoutResult(status ->
+                    uids.forEach(uid -> playlistSongRepository.deleteByPlaylistIdAndId(playlistId, uid))));
+            log.info("Batch delete benchmark [playlist songs, per id]: {} rows in {} ms", count, ms);
+
+            List<Long> uidsAgain = insertSongs(playlistId);
+            ms = time(() -> removed[0] = playlistService.removeBatchSongsFromPlaylist(SCRATCH_ID, playlistId,
+                    uidsAgain));
+            log.info("Batch delete benchmark [playlist songs, chunked IN]: {} rows in {} ms", removed[0], ms);
+        } finally {
+            jdbcTemplate.update("DELETE FROM playlist_songs WHERE playlist_id = ?", playlistId);
+            clearScratchUser("play_history");
+            playlistRepository.deleteById(playlistId);
+        }
+    }
+
+    private List<Long> insertHistory() {
+        List<PlayHistory> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PlayHistory h = new PlayHistory();
+            h.setUserId(SCRATCH_ID);
+            h.setSongJson(songJson(i));
+            h.setPlayedAt(System.currentTimeMillis());
+            rows.add(h);
+        }
+        return bulkWriteRepository.insertPlayHistory(rows);
+    }
+
+    private List<Long> insertSongs(Long playlistId) {
+        return bulkWriteRepository.insertPlaylistSongs(playlistId, songJsons(count), 1, System.currentTimeMillis());
+    }
+}
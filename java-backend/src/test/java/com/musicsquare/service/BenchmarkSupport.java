@@ -0,0 +1,114 @@
+package com.musicsquare.service;
+
+import org.junit.jupiter.api.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Common setup of the benchmarks. They are tagged "benchmark", which a plain {@code mvn test}
+ * skips; {@code mvn -P benchmark test} runs only them, with the benchmark profile
+ * (application-benchmark.yml), whose datasource is a throwaway schema. Results go to the log.
+ *
+ * Scratch rows are written for {@link #SCRATCH_ID} as user or playlist id and removed again
+ * by each benchmark.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("benchmark")
+abstract class BenchmarkSupport {
+
+    // No real user or playlist has a negative id.
+    protected static final long SCRATCH_ID = -1;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    protected interface ThreadWork {
+        void run(int thread) throws Exception;
+    }
+
+    /** A track in the shape the frontend stores, distinct for every {@code i}. */
+    protected static String songJson(int i) {
+        return "{\"id\":\"bench-" + i + "\",\"title\":\"Benchmark track " + i
+                + "\",\"artist\":\"Benchmark\",\"album\":\"-\",\"cover\":\"\",\"source\":\"netease\"}";
+    }
+
+    protected static List<String> songJsons(int count) {
+        List<String> jsons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            jsons.add(songJson(i));
+        }
+        return jsons;
+    }
+
+    protected static long elapsedMs(long startNanos) {
+        return Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    protected static long perSecond(long count, long nanos) {
+        return count * 1_000_000_000L / Math.max(1, nanos);
+    }
+
+    /** Times {@code action} in milliseconds. */
+    protected static long time(Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        return elapsedMs(start);
+    }
+
+    /**
+     * Runs {@code work} on {@code threads} threads that are released at the same moment and
+     * returns the nanos until the last one finished. A failure in any thread fails the run.
+     */
+    protected static long concurrently(int threads, ThreadWork work) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    work.run(thread);
+                    return null;
+                }));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return System.nanoTime() - start;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Benchmark thread failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Deletes the scratch user's rows from the given tables and from the library change log. */
+    protected void clearScratchUser(String... tables) {
+        for (String table : tables) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE user_id = ?", SCRATCH_ID);
+        }
+        jdbcTemplate.update("DELETE FROM library_changes WHERE user_id = ?", SCRATCH_ID);
+        jdbcTemplate.update("DELETE FROM library_versions WHERE user_id = ?", SCRATCH_ID);
+    }
+}
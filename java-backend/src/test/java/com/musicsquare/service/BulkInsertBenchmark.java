@@ -0,0 +1,77 @@
+package com.musicsquare.service;
+
+import com.musicsquare.entity.PlaylistSong;
+import com.musicsquare.repository.BulkWriteRepository;
+import com.musicsquare.repository.PlaylistSongRepository;
+import com.musicsquare.repository.SongCatalogRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Compares rows/sec of the old per-row {@code save()} loop with {@link BulkWriteRepository}.
+ * Rows are written under the scratch playlist id and deleted after each run.
+ */
+class BulkInsertBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private PlaylistSongRepository playlistSongRepository;
+
+    @Autowired
+    private BulkWriteRepository bulkWriteRepository;
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${music.bulk-insert.benchmark.rows:3000}")
+    private int rows;
+
+    @Value("${music.bulk-insert.benchmark.chunk-sizes:100,500,1000}")
+    private List<Integer> chunkSizes;
+
+    @Test
+    void run() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        List<String> jsons = songJsons(rows);
+        clear();
+
+        long start = System.nanoTime();
+        tx.executeWithoutResult(status -> {
+            for (String json : jsons) {
+                PlaylistSong ps = new PlaylistSong();
+                ps.setPlaylistId(SCRATCH_ID);
+                ps.setSongRef(songCatalogRepository.refFor(json));
+                ps.setIsLocalAdd(0);
+                ps.setCreatedAt(System.currentTimeMillis());
+                ps.setPosition(bulkWriteRepository.nextPosition(SCRATCH_ID));
+                playlistSongRepository.save(ps);
+            }
+        });
+        report("save() loop", start);
+        clear();
+
+        for (int chunkSize : chunkSizes) {
+            start = System.nanoTime();
+            tx.executeWithoutResult(status -> bulkWriteRepository.insertPlaylistSongs(
+                    SCRATCH_ID, jsons, 0, System.currentTimeMillis(), chunkSize));
+            report("bulk insert, chunk " + chunkSize, start);
+            clear();
+        }
+    }
+
+    private void report(String label, long startNanos) {
+        log.info("Bulk insert benchmark: {} - {} rows in {} ms ({} rows/s)", label, rows, elapsedMs(startNanos),
+                perSecond(rows, System.nanoTime() - startNanos));
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM playlist_songs WHERE playlist_id = ?", SCRATCH_ID);
+    }
+}
@@ -0,0 +1,75 @@
+package com.musicsquare.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the favorites write path.
+ *
+ * 1. Batch-adds {@code rows} favorites for the scratch user and times it.
+ * 2. Times id lookups through the song_id index against the old JSON_EXTRACT filter.
+ * All rows of the scratch user are deleted afterwards. Concurrent adds are covered by
+ * {@link FavoriteConcurrencyTest}.
+ */
+class FavoriteBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private FavoriteService favoriteService;
+
+    @Value("${music.favorites.benchmark.rows:10000}")
+    private int rows;
+
+    @Value("${music.favorites.benchmark.lookups:200}")
+    private int lookups;
+
+    @Test
+    void run() {
+        clear();
+        try {
+            List<Map<String, String>> songs = songs(rows);
+            long start = System.nanoTime();
+            int added = favoriteService.addBatchFavorites(SCRATCH_ID, songs);
+            log.info("Favorites benchmark: batch add of {} rows in {} ms ({} rows/s)", added, elapsedMs(start),
+                    perSecond(added, System.nanoTime() - start));
+
+            long ms = time(() -> {
+                for (int i = 0; i < lookups; i++) {
+                    jdbcTemplate.queryForList("SELECT id FROM favorites WHERE user_id = ? AND song_id = ?",
+                            SCRATCH_ID, "bench-" + (i * 37 % rows));
+                }
+            });
+            log.info("Favorites benchmark: {} lookups by song_id in {} ms", lookups, ms);
+
+            ms = time(() -> {
+                for (int i = 0; i < lookups; i++) {
+                    jdbcTemplate.queryForList("SELECT id FROM favorites WHERE user_id = ?"
+                            + " AND JSON_EXTRACT(song_json, '$.id') = ?", SCRATCH_ID, "bench-" + (i * 37 % rows));
+                }
+            });
+            log.info("Favorites benchmark: {} lookups by JSON_EXTRACT in {} ms", lookups, ms);
+        } finally {
+            clear();
+        }
+    }
+
+    private static List<Map<String, String>> songs(int count) {
+        List<Map<String, String>> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, String> item = new HashMap<>();
+            item.put("id", "bench-" + i);
+            item.put("json", songJson(i));
+            songs.add(item);
+        }
+        return songs;
+    }
+
+    private void clear() {
+        clearScratchUser("favorites");
+    }
+}
@@ -0,0 +1,78 @@
+package com.musicsquare.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Concurrent favorite adds for one user: every (user, song) pair must be stored once, reported
+ * as added by exactly one caller, and logged once in library_changes. Needs the database, so
+ * it runs with the benchmarks against the throwaway schema (mvn -P benchmark test).
+ */
+class FavoriteConcurrencyTest extends BenchmarkSupport {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private FavoriteService favoriteService;
+
+    @BeforeEach
+    @AfterEach
+    void clear() {
+        clearScratchUser("favorites");
+    }
+
+    @Test
+    void overlappingBatchesAddEachSongOnce() throws InterruptedException {
+        // Every thread adds the same songs, half of them in reverse order, at the same moment.
+        int count = 1000;
+        List<Map<String, String>> songs = songs(count);
+        List<Map<String, String>> reversed = new ArrayList<>(songs);
+        Collections.reverse(reversed);
+        AtomicInteger reported = new AtomicInteger();
+        concurrently(THREADS, thread ->
+                reported.addAndGet(favoriteService.addBatchFavorites(SCRATCH_ID, thread % 2 == 0 ? songs : reversed)));
+
+        assertEquals(count, countRows("SELECT COUNT(*) FROM favorites WHERE user_id = ?"), "rows");
+        assertEquals(count, countRows("SELECT COUNT(DISTINCT song_id) FROM favorites WHERE user_id = ?"),
+                "distinct songs");
+        assertEquals(count, reported.get(), "songs reported as added");
+        assertEquals(count, countRows("SELECT COUNT(*) FROM library_changes WHERE user_id = ?"
+                + " AND kind = 'favorite' AND op = 'insert'"), "logged inserts");
+    }
+
+    @Test
+    void concurrentSingleAddsStoreOneRow() throws InterruptedException {
+        Map<String, String> song = songs(1).get(0);
+        concurrently(THREADS, thread -> favoriteService.addFavorite(SCRATCH_ID, song.get("json"), song.get("id")));
+
+        assertEquals(1, countRows("SELECT COUNT(*) FROM favorites WHERE user_id = ?"), "rows");
+        assertEquals(1, countRows("SELECT COUNT(*) FROM library_changes WHERE user_id = ?"
+                + " AND kind = 'favorite' AND op = 'insert'"), "logged inserts");
+    }
+
+    private int countRows(String sql) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, SCRATCH_ID);
+    }
+
+    private static List<Map<String, String>> songs(int count) {
+        List<Map<String, String>> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, String> item = new HashMap<>();
+            item.put("id", "bench-" + i);
+            item.put("json", songJson(i));
+            songs.add(item);
+        }
+        return songs;
+    }
+}
@@ -0,0 +1,79 @@
+package com.musicsquare.service;
+
+import com.musicsquare.entity.PlayHistory;
+import com.musicsquare.repository.PlayHistoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Measures the cost of recording a play as seen by the POST /api/history handler.
+ *
+ * {@code threads} workers each record {@code plays-per-thread} plays for the scratch user,
+ * first with a direct {@code save()} per play (the old path), then through the write-behind
+ * buffer. Throughput and p50/p99 call latency are logged for both, plus the time the buffer
+ * needed to write out what was still queued. All rows of the scratch user are deleted
+ * afterwards.
+ */
+class HistoryWriteBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private PlayHistoryRepository playHistoryRepository;
+
+    @Autowired
+    private HistoryWriteBuffer historyWriteBuffer;
+
+    @Value("${music.history.benchmark.threads:16}")
+    private int threads;
+
+    @Value("${music.history.benchmark.plays-per-thread:500}")
+    private int playsPerThread;
+
+    @Test
+    void run() throws InterruptedException {
+        clear();
+        try {
+            measure("direct save", playHistoryRepository::save);
+            if (historyWriteBuffer.isEnabled()) {
+                measure("write-behind", historyWriteBuffer::add);
+                long start = System.nanoTime();
+                int drained = historyWriteBuffer.flushAll();
+                log.info("History benchmark: {} plays still queued, written in {} ms", drained, elapsedMs(start));
+            } else {
+                log.info("History benchmark: write-behind buffer is disabled, skipped");
+            }
+        } finally {
+            clear();
+        }
+    }
+
+    private void measure(String name, Consumer<PlayHistory> record) throws InterruptedException {
+        int total = threads * playsPerThread;
+        long[] latencies = new long[total];
+        long nanos = concurrently(threads, thread -> {
+            int offset = thread * playsPerThread;
+            for (int i = 0; i < playsPerThread; i++) {
+                PlayHistory h = new PlayHistory();
+                h.setUserId(SCRATCH_ID);
+                h.setSongJson(songJson(offset + i));
+                h.setPlayedAt(System.currentTimeMillis());
+                long s = System.nanoTime();
+                record.accept(h);
+                latencies[offset + i] = System.nanoTime() - s;
+            }
+        });
+
+        Arrays.sort(latencies);
+        log.info("History benchmark [{}]: {} plays on {} threads, {} plays/s, p50 {} us, p99 {} us", name, total,
+                threads, perSecond(total, nanos),
+                latencies[total / 2] / 1000, latencies[Math.min(total - 1, (int) (total * 0.99))] / 1000);
+    }
+
+    private void clear() {
+        historyWriteBuffer.flushUser(SCRATCH_ID);
+        clearScratchUser("play_history");
+    }
+}
@@ -0,0 +1,116 @@
+package com.musicsquare.service;
+
+import com.musicsquare.codec.SongPayloadCodec;
+import com.musicsquare.repository.SongCatalogRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the songs.payload encodings: stored bytes per row, encode and decode time, and
+ * insert throughput into the songs table. Samples come from the catalog, topped up with
+ * synthetic tracks when it holds fewer than {@code rows}; copy real rows into the benchmark
+ * schema for representative sizes. Inserted rows use a "bench-" key prefix and are removed
+ * afterwards.
+ */
+class PayloadCodecBenchmark extends BenchmarkSupport {
+
+    private static final String[][] SETTINGS = {
+            { "json", "none" }, { "json", "deflate" }, { "smile", "none" }, { "smile", "deflate" } };
+
+    @Autowired
+    private SongCatalogRepository songCatalogRepository;
+
+    @Value("${music.songs.codec.benchmark.rows:2000}")
+    private int rows;
+
+    @Value("${music.songs.codec.benchmark.iterations:20}")
+    private int iterations;
+
+    @Value("${music.songs.codec.level:6}")
+    private int level;
+
+    @Test
+    void run() {
+        List<String> samples = samples();
+        long jsonBytes = 0;
+        for (String json : samples) {
+            jsonBytes += json.getBytes(StandardCharsets.UTF_8).length;
+        }
+        log.info("Payload codec benchmark: {} samples, {} bytes/row as plain text", samples.size(),
+                jsonBytes / samples.size());
+
+        for (String[] setting : SETTINGS) {
+            SongPayloadCodec codec = SongPayloadCodec.of(setting[0], setting[1], level);
+            List<byte[]> encoded = new ArrayList<>(samples.size());
+            long bytes = 0;
+            for (String json : samples) {
+                byte[] data = codec.encode(json);
+                encoded.add(data);
+                bytes += data.length;
+            }
+            for (byte[] data : encoded) {
+                SongPayloadCodec.decode(data);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String json : samples) {
+                    codec.encode(json);
+                }
+            }
+            double encodeUs = (System.nanoTime() - start) / 1000.0 / iterations / samples.size();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (byte[] data : encoded) {
+                    SongPayloadCodec.decode(data);
+                }
+            }
+            double decodeUs = (System.nanoTime() - start) / 1000.0 / iterations / samples.size();
+
+            long insertMs = insert(codec.name(), encoded);
+            log.info("Payload codec benchmark [{}]: {} bytes/row ({}% of text), encode {} us/row, decode {} us/row, "
+                            + "insert {} rows/s", codec.name(), bytes / samples.size(), bytes * 100 / jsonBytes,
+                    String.format("%.2f", encodeUs), String.format("%.2f", decodeUs),
+                    insertMs > 0 ? encoded.size() * 1000L / insertMs : encoded.size());
+        }
+    }
+
+    private List<String> samples() {
+        List<String> samples = new ArrayList<>(rows);
+        jdbcTemplate.query("SELECT payload, song_json FROM songs LIMIT ?",
+                (RowCallbackHandler) rs -> samples.add(songCatalogRepository.decode(rs.getBytes(1), rs.getString(2))),
+                rows);
+        samples.removeIf(json -> json == null);
+        String[] sources = { "netease", "qq", "kuwo" };
+        for (int i = samples.size(); i < rows; i++) {
+            String source = sources[i % sources.length];
+            samples.add("{\"id\":\"" + source + "-" + (100000 + i) + "\",\"songId\":\"" + (100000 + i)
+                    + "\",\"title\":\"Track " + i + "\",\"artist\":\"Artist " + (i % 97) + "\",\"album\":\"Album "
+                    + (i % 31) + "\",\"cover\":\"https://p1.music.126.net/" + Integer.toHexString(i * 7919)
+                    + "/" + (109951163000000L + i) + ".jpg\",\"duration\":" + (180 + i % 120)
+                    + ",\"source\":\"" + source + "\"}");
+        }
+        return samples;
+    }
+
+    private long insert(String name, List<byte[]> encoded) {
+        List<Object[]> args = new ArrayList<>(encoded.size());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < encoded.size(); i++) {
+            args.add(new Object[] { "bench-" + name + "-" + i, encoded.get(i), now });
+        }
+        try {
+            long start = System.nanoTime();
+            jdbcTemplate.batchUpdate("INSERT INTO songs (song_key, payload, created_at) VALUES (?, ?, ?)", args);
+            return (System.nanoTime() - start) / 1_000_000;
+        } finally {
+            jdbcTemplate.update("DELETE FROM songs WHERE song_key LIKE 'bench-%'");
+        }
+    }
+}
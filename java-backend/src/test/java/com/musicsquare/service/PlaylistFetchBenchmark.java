@@ -0,0 +1,116 @@
+package com.musicsquare.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reports tracks/sec of {@link PlaylistFetchService} expanding netease playlists of each size
+ * in {@code sizes} against a local stub of the netease API, once one chunk at a time (what
+ * js/api.js did) and once with the configured parallelism. Every stub call waits
+ * {@code latency-ms} before answering, standing in for the round trip to the real API.
+ * A run that returns a track out of order or misses one fails.
+ */
+class PlaylistFetchBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private PlaylistFetchService playlistFetchService;
+
+    @Value("${music.playlist-fetch.parallelism:6}")
+    private int parallelism;
+
+    @Value("${music.playlist-fetch.benchmark.sizes:500,2000,10000}")
+    private List<Integer> sizes;
+
+    @Value("${music.playlist-fetch.benchmark.latency-ms:50}")
+    private long latencyMs;
+
+    @Test
+    void run() throws Exception {
+        HttpServer upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        ExecutorService upstreamThreads = Executors.newCachedThreadPool();
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/playlist/detail", exchange -> {
+            int size = Integer.parseInt(query(exchange).substring("id=".length()));
+            StringBuilder json = new StringBuilder("{\"playlist\":{\"name\":\"Benchmark ").append(size)
+                    .append("\",\"trackIds\":[");
+            for (int i = 0; i < size; i++) {
+                json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+            }
+            respond(exchange, json.append("]}}").toString());
+        });
+        upstream.createContext("/song/detail", exchange -> {
+            String[] ids = query(exchange).substring("ids=".length()).split(",");
+            StringBuilder json = new StringBuilder("{\"songs\":[");
+            // Reversed, so the service has to restore the playlist order itself.
+            for (int i = ids.length - 1; i >= 0; i--) {
+                json.append(i == ids.length - 1 ? "" : ",").append("{\"id\":").append(ids[i])
+                        .append(",\"name\":\"Track ").append(ids[i])
+                        .append("\",\"ar\":[{\"name\":\"Benchmark\"}],\"al\":{\"name\":\"-\",\"picUrl\":\"\"}}");
+            }
+            respond(exchange, json.append("]}").toString());
+        });
+        upstream.start();
+
+        Object apiBase = ReflectionTestUtils.getField(playlistFetchService, "neteaseApiBase");
+        ReflectionTestUtils.setField(playlistFetchService, "neteaseApiBase",
+                "http://127.0.0.1:" + upstream.getAddress().getPort());
+        try {
+            for (int size : sizes) {
+                measure(size, 1);
+                measure(size, parallelism);
+            }
+        } finally {
+            ReflectionTestUtils.setField(playlistFetchService, "neteaseApiBase", apiBase);
+            ReflectionTestUtils.setField(playlistFetchService, "parallelism", parallelism);
+            upstream.stop(0);
+            upstreamThreads.shutdownNow();
+        }
+    }
+
+    private void measure(int size, int workers) {
+        ReflectionTestUtils.setField(playlistFetchService, "parallelism", workers);
+        long start = System.nanoTime();
+        PlaylistFetchService.FetchedPlaylist fetched = playlistFetchService.fetch("netease", String.valueOf(size));
+        long nanos = System.nanoTime() - start;
+        log.info("Playlist fetch benchmark: {} tracks, parallelism {} - {} ms ({} tracks/s), {} failed chunks",
+                size, workers, nanos / 1_000_000, perSecond(fetched.tracks.size(), nanos), fetched.failedChunks);
+
+        assertEquals(size, fetched.tracks.size(), "tracks returned");
+        for (int i = 0; i < size; i++) {
+            assertEquals("netease-" + i, fetched.tracks.get(i).get("id"), "track order");
+        }
+    }
+
+    private String query(HttpExchange exchange) {
+        return exchange.getRequestURI().getQuery();
+    }
+
+    private void respond(HttpExchange exchange, String json) throws IOException {
+        try (exchange) {
+            Thread.sleep(latencyMs);
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.musicsquare.service;
+
+import com.musicsquare.cache.MediaCache;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that /api/proxy keeps heap use flat: {@code streams} concurrent clients each fetch
+ * a {@code stream-mb} body from a local upstream, first live (the bodies are teed into the
+ * media cache as they pass) and then again as cache hits. The clients start over
+ * {@code ramp-ms}; a live body takes longer than that, so all of them overlap.
+ *
+ * While the streams run, a sampler forces a collection every {@code sample-ms} and records
+ * the live heap, so garbage that is merely waiting for the next GC does not count. The run
+ * fails when any round ends with a body short of {@code stream-mb}, or when the live heap
+ * grew by more than {@code max-growth-mb} over the idle baseline; holding even one body per
+ * stream would need {@code streams} x {@code stream-mb}. The cache uses its own directory,
+ * removed afterwards.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = "music.proxy.cache.dir=target/proxy-heap-benchmark-cache")
+class ProxyHeapBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private PoolingHttpClientConnectionManager upstreamConnectionManager;
+
+    @Autowired
+    private MediaCache mediaCache;
+
+    @LocalServerPort
+    private int serverPort;
+
+    @Value("${music.proxy.cache.dir}")
+    private String cacheDir;
+
+    @Value("${music.proxy.benchmark.heap.streams:50}")
+    private int streams;
+
+    @Value("${music.proxy.benchmark.heap.stream-mb:20}")
+    private int streamMb;
+
+    @Value("${music.proxy.benchmark.heap.max-growth-mb:64}")
+    private int maxGrowthMb;
+
+    @Value("${music.proxy.benchmark.heap.sample-ms:250}")
+    private long sampleMs;
+
+    // Requests are spread over this long, so the upstream guard's limiter does not refuse a burst.
+    @Value("${music.proxy.benchmark.heap.ramp-ms:5000}")
+    private long rampMs;
+
+    @Test
+    void run() throws Exception {
+        long bodyBytes = streamMb * 1024L * 1024L;
+        byte[] chunk = new byte[64 * 1024];
+        AtomicInteger upstreamRequests = new AtomicInteger();
+
+        HttpServer upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), streams);
+        ExecutorService upstreamThreads = Executors.newCachedThreadPool();
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/track", exchange -> {
+            upstreamRequests.incrementAndGet();
+            try (exchange) {
+                exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+                exchange.getResponseHeaders().set("ETag", "\"" + exchange.getRequestURI().getQuery() + "\"");
+                exchange.sendResponseHeaders(200, bodyBytes);
+                OutputStream body = exchange.getResponseBody();
+                for (long sent = 0; sent < bodyBytes; sent += chunk.length) {
+                    body.write(chunk, 0, (int) Math.min(chunk.length, bodyBytes - sent));
+                }
+            }
+        });
+        upstream.start();
+
+        int port = upstream.getAddress().getPort();
+        HttpRoute route = new HttpRoute(new HttpHost("http", "127.0.0.1", port));
+        int maxTotal = upstreamConnectionManager.getMaxTotal();
+        upstreamConnectionManager.setMaxPerRoute(route, streams);
+        upstreamConnectionManager.setMaxTotal(maxTotal + streams);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        // Unique per run, so the first round always misses the cache.
+        String run = Long.toString(System.currentTimeMillis());
+        try {
+            round("live", client, port, run, bodyBytes);
+            int live = upstreamRequests.getAndSet(0);
+            round("cache hit", client, port, run, bodyBytes);
+            log.info("Proxy heap benchmark: upstream saw {} requests live, {} on the cached round; cache {}",
+                    live, upstreamRequests.get(), mediaCache.stats());
+        } finally {
+            upstream.stop(0);
+            upstreamThreads.shutdownNow();
+            upstreamConnectionManager.setMaxTotal(maxTotal);
+            upstreamConnectionManager.setMaxPerRoute(route, upstreamConnectionManager.getDefaultMaxPerRoute());
+            FileSystemUtils.deleteRecursively(Paths.get(cacheDir));
+        }
+    }
+
+    private void round(String name, HttpClient client, int port, String run, long bodyBytes) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long baseline = liveHeap(memory);
+        AtomicLong peak = new AtomicLong(baseline);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleWithFixedDelay(() -> peak.accumulateAndGet(liveHeap(memory), Math::max),
+                sampleMs, sampleMs, TimeUnit.MILLISECONDS);
+
+        AtomicLong relayed = new AtomicLong();
+        AtomicInteger complete = new AtomicInteger();
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger peakOpen = new AtomicInteger();
+        long nanos;
+        try {
+            nanos = concurrently(streams, stream -> {
+                Thread.sleep(rampMs * stream / streams);
+                String target = "http://127.0.0.1:" + port + "/track?" + run + "-" + stream;
+                HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + serverPort
+                                + "/api/proxy?url=" + URLEncoder.encode(target, StandardCharsets.UTF_8)))
+                        .timeout(Duration.ofMinutes(5))
+                        .build();
+                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                byte[] buffer = new byte[64 * 1024];
+                long read = 0;
+                peakOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                try (InputStream body = response.body()) {
+                    for (int n; (n = body.read(buffer)) != -1; ) {
+                        read += n;
+                    }
+                } finally {
+                    open.decrementAndGet();
+                }
+                relayed.addAndGet(read);
+                if (response.statusCode() == 200 && read == bodyBytes) {
+                    complete.incrementAndGet();
+                } else {
+                    log.warn("Proxy heap benchmark [{}]: stream {} got {} with {} bytes", name, stream,
+                            response.statusCode(), read);
+                }
+            });
+        } finally {
+            sampler.shutdownNow();
+            sampler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        long growthMb = (peak.get() - baseline) / (1024 * 1024);
+        log.info("Proxy heap benchmark [{}]: {} x {} MB streams, {} complete, at most {} open at once, {} MB relayed"
+                        + " in {} ms ({} MB/s); live heap baseline {} MB, peak {} MB (+{} MB, limit +{} MB)",
+                name, streams, streamMb, complete.get(), peakOpen.get(), relayed.get() / (1024 * 1024), nanos / 1_000_000,
+                perSecond(relayed.get(), nanos) / (1024 * 1024), baseline / (1024 * 1024),
+                peak.get() / (1024 * 1024), growthMb, maxGrowthMb);
+        assertEquals(streams, complete.get(), name + ": incomplete streams");
+        assertTrue(growthMb <= maxGrowthMb, name + ": live heap grew by " + growthMb + " MB");
+    }
+
+    private static long liveHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
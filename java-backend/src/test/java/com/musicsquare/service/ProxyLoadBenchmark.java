@@ -0,0 +1,190 @@
+package com.musicsquare.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for /api/proxy: opens {@code connections} concurrent proxy requests against a
+ * local upstream that streams each body slowly over {@code hold-ms}, the way a long audio
+ * track ties up a request for its whole duration.
+ *
+ * The upstream counts the bodies it is streaming at the same time; that is the number of
+ * proxy requests the backend is actually serving. On platform threads it cannot exceed
+ * server.tomcat.threads.max and the run takes at least connections / threads.max rounds of
+ * hold-ms. With spring.threads.virtual.enabled on Java 21 all connections should be served at
+ * once. Run it both ways to compare (add -P java21 -Dspring.threads.virtual.enabled=true).
+ *
+ * For the duration of the run the shared upstream connection pool is widened for the local
+ * route only, so the pool (not the threads) does not become the limit; it is reset afterwards.
+ * Every connection takes four sockets in this process, so the open-file limit must allow it.
+ * Requests carry a mid-body Range, so nothing is written to the media cache. They are started
+ * over {@code ramp-ms}: the per-host limiter of the upstream guard still applies until the
+ * response headers arrive, and a burst of all connections at once would be rejected there.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ProxyLoadBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private PoolingHttpClientConnectionManager upstreamConnectionManager;
+
+    @Autowired
+    private Environment environment;
+
+    @LocalServerPort
+    private int serverPort;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatThreads;
+
+    @Value("${music.proxy.benchmark.connections:1000}")
+    private int connections;
+
+    @Value("${music.proxy.benchmark.hold-ms:5000}")
+    private long holdMs;
+
+    @Value("${music.proxy.benchmark.chunk-interval-ms:500}")
+    private long chunkIntervalMs;
+
+    @Value("${music.proxy.benchmark.chunk-bytes:4096}")
+    private int chunkBytes;
+
+    @Value("${music.proxy.benchmark.ramp-ms:2000}")
+    private long rampMs;
+
+    @Test
+    void run() throws Exception {
+        AtomicInteger streaming = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        byte[] chunk = new byte[chunkBytes];
+
+        HttpServer upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                connections);
+        ExecutorService upstreamThreads = Executors.newCachedThreadPool();
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/track", exchange -> {
+            int now = streaming.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream body = exchange.getResponseBody();
+                long end = System.currentTimeMillis() + holdMs;
+                do {
+                    body.write(chunk);
+                    body.flush();
+                    Thread.sleep(chunkIntervalMs);
+                } while (System.currentTimeMillis() < end);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                streaming.decrementAndGet();
+                exchange.close();
+            }
+        });
+        upstream.start();
+
+        int port = upstream.getAddress().getPort();
+        HttpRoute route = new HttpRoute(new HttpHost("http", "127.0.0.1", port));
+        int maxTotal = upstreamConnectionManager.getMaxTotal();
+        upstreamConnectionManager.setMaxPerRoute(route, connections);
+        upstreamConnectionManager.setMaxTotal(maxTotal + connections);
+
+        // Samples the streaming count, so the log shows how long the level was held, not just its peak.
+        AtomicLong samples = new AtomicLong();
+        AtomicLong sampleSum = new AtomicLong();
+        AtomicLong samplesAboveThreads = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            int now = streaming.get();
+            samples.incrementAndGet();
+            sampleSum.addAndGet(now);
+            if (now > tomcatThreads) {
+                samplesAboveThreads.incrementAndGet();
+            }
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        long start = System.nanoTime();
+        try {
+            List<CompletableFuture<Void>> requests = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                String target = "http://127.0.0.1:" + port + "/track?i=" + i;
+                HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + serverPort
+                                + "/api/proxy?url=" + URLEncoder.encode(target, StandardCharsets.UTF_8)))
+                        .header("Range", "bytes=1-")
+                        .timeout(Duration.ofMillis(holdMs * (connections / Math.max(1, tomcatThreads) + 2) + 30_000))
+                        .build();
+                requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenAccept(response -> {
+                            bytes.addAndGet(response.body().length);
+                            if (response.statusCode() == 200) {
+                                ok.incrementAndGet();
+                            } else if (response.statusCode() == 503) {
+                                rejected.incrementAndGet();
+                            } else {
+                                failed.incrementAndGet();
+                            }
+                        })
+                        .exceptionally(e -> {
+                            failed.incrementAndGet();
+                            return null;
+                        }));
+                LockSupport.parkNanos(rampMs * 1_000_000 / connections);
+            }
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            sampler.shutdownNow();
+            upstream.stop(0);
+            upstreamThreads.shutdownNow();
+            upstreamConnectionManager.setMaxTotal(maxTotal);
+            upstreamConnectionManager.setMaxPerRoute(route, upstreamConnectionManager.getDefaultMaxPerRoute());
+
+            long rounds = (connections + tomcatThreads - 1) / Math.max(1, tomcatThreads);
+            log.info("Proxy load benchmark [{} threads]: {} connections held {} ms each, {} ok, {} rejected by the"
+                            + " upstream guard, {} failed, {} KB relayed, {} ms total (platform threads.max {} needs >= {} ms)",
+                    Threading.VIRTUAL.isActive(environment) ? "virtual" : "platform", connections, holdMs, ok.get(),
+                    rejected.get(), failed.get(), bytes.get() / 1024, millis, tomcatThreads, rounds * holdMs);
+            log.info("Proxy load benchmark: peak {} concurrent proxied streams, mean {}, above threads.max for {} ms",
+                    peak.get(), samples.get() == 0 ? 0 : sampleSum.get() / samples.get(),
+                    samplesAboveThreads.get() * 100);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the two ways of answering a song list, in memory and without a database.
+ *
+ * "parse" is what the controllers used to do: readValue every stored song into a Map, put
+ * the uid and serialize the list. "splice" is {@link SongJsonStreamer#writeSong}. Both write
+ * {@code rows} songs to a discarding stream; throughput and bytes allocated per response are
+ * reported for each after a warm-up.
+ */
+class SongJsonBenchmark extends BenchmarkSupport {
+
+    private interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${music.streaming.benchmark.rows:5000}")
+    private int rows;
+
+    @Value("${music.streaming.benchmark.iterations:200}")
+    private int iterations;
+
+    @Test
+    void run() throws IOException {
+        List<String> songs = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> song = new LinkedHashMap<>();
+            song.put("id", "netease-" + (100000 + i));
+            song.put("songId", String.valueOf(100000 + i));
+            song.put("title", "测试歌曲 " + i);
+            song.put("artist", "歌手 " + (i % 97));
+            song.put("album", "专辑 " + (i % 31));
+            song.put("cover", "https://p1.music.126.net/cover/" + i + ".jpg");
+            song.put("source", "netease");
+            song.put("duration", 180 + i % 120);
+            songs.add(objectMapper.writeValueAsString(song));
+        }
+
+        measure("parse", out -> {
+            List<Map<String, Object>> result = new ArrayList<>(songs.size());
+            long uid = 1;
+            for (String json : songs) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> song = objectMapper.readValue(json, Map.class);
+                song.put("uid", uid++);
+                result.add(song);
+            }
+            objectMapper.writeValue(out, result);
+        });
+        measure("splice", out -> {
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+                gen.writeStartArray();
+                long uid = 1;
+                for (String json : songs) {
+                    SongJsonStreamer.writeSong(gen, json, uid++, null);
+                }
+                gen.writeEndArray();
+            }
+        });
+    }
+
+    private void measure(String name, Body body) throws IOException {
+        for (int i = 0; i < Math.max(20, iterations / 5); i++) {
+            body.write(OutputStream.nullOutputStream());
+        }
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.write(OutputStream.nullOutputStream());
+        }
+        long nanos = System.nanoTime() - start;
+        long bytesAfter = allocatedBytes();
+        log.info("Song JSON benchmark [{}]: {} rows, {} responses/s, {} KB allocated per response", name, rows,
+                String.format("%.1f", iterations * 1e9 / nanos),
+                bytesBefore < 0 ? "n/a" : (bytesAfter - bytesBefore) / iterations / 1024);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,151 @@
+package com.musicsquare.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares requests/sec of a plain {@code new RestTemplate()} (what each controller used to
+ * build) with the shared pooled {@code upstreamRestTemplate}, both calling a local upstream
+ * that answers a small JSON body. {@code threads} workers send {@code requests-per-thread}
+ * GETs each; {@code threads} must not exceed the guard's initial concurrency limit, or calls
+ * are refused there. HttpURLConnection keeps only http.maxConnections (5) idle connections
+ * per host, so with more threads than that it keeps opening new ones; below it the two
+ * clients are about even on loopback.
+ *
+ * The upstream records the client port of every exchange, which is the number of TCP
+ * connections each client opened. For the pooled run a sampler also reads the pool stats of
+ * the local route, and afterwards the pool is read again through /api/upstream/stats. The
+ * run fails if the pool leased more than its route maximum, left a connection leased, opened
+ * more connections than the route maximum, or the endpoint disagrees with the pool.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class UpstreamClientBenchmark extends BenchmarkSupport {
+
+    static {
+        // Otherwise the stub's separate header and body writes meet delayed ACKs, and every
+        // keep-alive request waits ~40 ms whichever client sends it.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final byte[] BODY = "{\"code\":200,\"data\":{\"id\":\"bench\"}}".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    @Qualifier("upstreamRestTemplate")
+    private RestTemplate upstreamRestTemplate;
+
+    @Autowired
+    private PoolingHttpClientConnectionManager upstreamConnectionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @LocalServerPort
+    private int serverPort;
+
+    @Value("${music.upstream.benchmark.threads:16}")
+    private int threads;
+
+    @Value("${music.upstream.benchmark.requests-per-thread:2000}")
+    private int requestsPerThread;
+
+    @Test
+    void run() throws Exception {
+        Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        HttpServer upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        ExecutorService upstreamThreads = Executors.newFixedThreadPool(threads * 2);
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/api", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try (exchange) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, BODY.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(BODY);
+                }
+            }
+        });
+        upstream.start();
+        int port = upstream.getAddress().getPort();
+        String url = "http://127.0.0.1:" + port + "/api?id=bench";
+        HttpRoute route = new HttpRoute(new HttpHost("http", "127.0.0.1", port));
+        int routeMax = upstreamConnectionManager.getMaxPerRoute(route);
+
+        try {
+            RestTemplate plain = new RestTemplate();
+            measure("new RestTemplate()", plain, url);
+            log.info("Upstream client benchmark [new RestTemplate()]: {} TCP connections opened", clientPorts.size());
+            clientPorts.clear();
+
+            AtomicInteger peakLeased = new AtomicInteger();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> peakLeased.accumulateAndGet(
+                    upstreamConnectionManager.getStats(route).getLeased(), Math::max), 0, 5, TimeUnit.MILLISECONDS);
+            try {
+                measure("pooled", upstreamRestTemplate, url);
+            } finally {
+                sampler.shutdownNow();
+                sampler.awaitTermination(10, TimeUnit.SECONDS);
+            }
+
+            PoolStats stats = upstreamConnectionManager.getStats(route);
+            log.info("Upstream client benchmark [pooled]: {} TCP connections opened; route pool peak leased {},"
+                            + " now leased {}, available {}, pending {}, max {}", clientPorts.size(), peakLeased.get(),
+                    stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+            assertTrue(peakLeased.get() <= routeMax, "pool leased above the route maximum");
+            assertEquals(0, stats.getLeased(), "connections still leased after the run");
+            assertTrue(clientPorts.size() <= routeMax, "pooled client opened more connections than the route maximum");
+
+            JsonNode reported = objectMapper.readTree(new RestTemplate().getForObject(
+                    "http://127.0.0.1:" + serverPort + "/api/upstream/stats", String.class))
+                    .path("data").path("hosts").path(route.getTargetHost().toURI());
+            log.info("Upstream client benchmark: /api/upstream/stats reports {}", reported);
+            assertEquals(0, reported.path("leased").asInt(-1), "/api/upstream/stats leased");
+            assertEquals(stats.getMax(), reported.path("max").asInt(-1), "/api/upstream/stats max");
+        } finally {
+            upstream.stop(0);
+            upstreamThreads.shutdownNow();
+        }
+    }
+
+    private void measure(String name, RestTemplate restTemplate, String url) throws InterruptedException {
+        int total = threads * requestsPerThread;
+        // Warm up the client and the upstream before timing.
+        for (int i = 0; i < 100; i++) {
+            restTemplate.getForObject(url, String.class);
+        }
+        long nanos = concurrently(threads, thread -> {
+            for (int i = 0; i < requestsPerThread; i++) {
+                restTemplate.getForObject(url, String.class);
+            }
+        });
+        log.info("Upstream client benchmark [{}]: {} requests on {} threads in {} ms, {} requests/s", name, total,
+                threads, nanos / 1_000_000, perSecond(total, nanos));
+    }
+}
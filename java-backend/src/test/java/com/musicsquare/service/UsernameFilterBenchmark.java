@@ -0,0 +1,78 @@
+package com.musicsquare.service;
+
+import com.musicsquare.cache.BloomFilter;
+import com.musicsquare.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures check-user probe throughput: the Bloom filter alone on {@code threads} threads,
+ * and the database lookup it replaces for definite negatives. Also fills a separate filter
+ * with {@code names} synthetic names and reports the false-positive rate seen on unseen
+ * names against the configured target. Read-only.
+ */
+class UsernameFilterBenchmark extends BenchmarkSupport {
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${music.auth.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Value("${music.auth.bloom.benchmark.names:100000}")
+    private int names;
+
+    @Value("${music.auth.bloom.benchmark.probes:1000000}")
+    private int probes;
+
+    @Value("${music.auth.bloom.benchmark.db-probes:2000}")
+    private int dbProbes;
+
+    @Value("${music.auth.bloom.benchmark.threads:4}")
+    private int threads;
+
+    // The context is ready, so UsernameFilter#load has already filled the filter.
+    @Test
+    void run() throws Exception {
+        BloomFilter synthetic = new BloomFilter(names, fpp);
+        for (int i = 0; i < names; i++) {
+            synthetic.put(UsernameFilter.fold("bench-user-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < names; i++) {
+            if (synthetic.mightContain(UsernameFilter.fold("bench-other-" + i))) {
+                falsePositives++;
+            }
+        }
+        log.info("Username filter benchmark: {} names in {} bits, {} hashes; false positives {} (target {})",
+                names, synthetic.bits(), synthetic.hashes(), (double) falsePositives / names, fpp);
+
+        int perThread = probes / threads;
+        AtomicInteger negatives = new AtomicInteger();
+        long nanos = concurrently(threads, thread -> {
+            int offset = thread * perThread;
+            int mine = 0;
+            for (int i = 0; i < perThread; i++) {
+                if (!usernameFilter.mightExist("bench-probe-" + (offset + i))) {
+                    mine++;
+                }
+            }
+            negatives.addAndGet(mine);
+        });
+        log.info("Username filter benchmark [filter]: {} probes on {} threads, {} probes/s, {} definite negatives",
+                perThread * threads, threads, perSecond((long) perThread * threads, nanos), negatives.get());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < dbProbes; i++) {
+            userRepository.existsByUsername("bench-probe-" + i);
+        }
+        log.info("Username filter benchmark [database]: {} lookups, {} lookups/s", dbProbes,
+                perSecond(dbProbes, System.nanoTime() - start));
+    }
+}
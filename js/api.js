@@ -344,6 +344,24 @@ const MusicAPI = {
     async aggregateSearch(keyword, page = 1, signal = null) {
         if (!keyword) return [];
 
+        // 优先使用后端聚合搜索 (服务端并发请求三个平台，一次往返)
+        if (this.endpoints.worker) {
+            try {
+                const params = new URLSearchParams({ keyword, page, limit: 10 });
+                const fetchOptions = signal ? { signal } : {};
+                const res = await fetch(`${this.endpoints.worker}/search?${params}`, fetchOptions);
+                const result = await res.json();
+                if (result.success && result.data && Array.isArray(result.data.tracks)) {
+                    return result.data.tracks.map(t => t.source === 'kuwo' && t.cover
+                        ? { ...t, cover: this.getProxyUrl(t.cover, 'kuwo') }
+                        : t);
+                }
+            } catch (e) {
+                if (e.name === 'AbortError') return [];
+                console.warn('Backend aggregate search failed, falling back to client-side search:', e);
+            }
+        }
+
         const TIMEOUT = 15000; // 每个平台 15s 超时
 
         const searchPromises = [
@@ -673,6 +691,13 @@ const MusicAPI = {
 
     // 获取排行榜列表
     async getBillboardList(source) {
+        // 优先使用后端预热的排行榜快照
+        const warm = await this._getToplistSnapshot(`/toplists?source=${source}`);
+        if (warm && Array.isArray(warm.list) && warm.list.length > 0) {
+            return warm.list.map(item => source === 'kuwo' && item.pic
+                ? { ...item, pic: this.getProxyUrl(item.pic, 'kuwo') }
+                : item);
+        }
         try {
             if (source === 'netease') {
                 return await this._getToplistsNetease();
@@ -687,6 +712,18 @@ const MusicAPI = {
         return [];
     },
 
+    async _getToplistSnapshot(path) {
+        if (!this.endpoints.worker) return null;
+        try {
+            const res = await fetch(`${this.endpoints.worker}${path}`);
+            const result = await res.json();
+            return result.success ? result.data : null;
+        } catch (e) {
+            console.warn('Toplist snapshot fetch failed:', e);
+            return null;
+        }
+    },
+
     async _getToplistsNetease() {
         const json = await this._requestNetease('/toplist');
 
@@ -766,6 +803,12 @@ const MusicAPI = {
 
     // 获取排行榜详情
     async getBillboardDetail(source, id) {
+        const warm = await this._getToplistSnapshot(`/toplists/${source}/${encodeURIComponent(id)}`);
+        if (warm && Array.isArray(warm.tracks) && warm.tracks.length > 0) {
+            return warm.tracks.map(t => t.source === 'kuwo' && t.cover
+                ? { ...t, cover: this.getProxyUrl(t.cover, 'kuwo') }
+                : t);
+        }
         try {
             if (source === 'netease') {
                 return await this._getToplistDetailNetease(id);
@@ -865,6 +908,29 @@ const MusicAPI = {
         }));
     },
 
+    // 从后端获取已解析的歌词 (服务端缓存，含翻译合并)，返回 [{ time, text, translation }]
+    async fetchLyrics(track, lrcUrl = null) {
+        if (!this.endpoints.worker) return null;
+        const params = new URLSearchParams();
+        if (lrcUrl) {
+            params.set('url', lrcUrl);
+        } else {
+            const sid = track.songId || (track.id && String(track.id).includes('-') ? String(track.id).split('-')[1] : track.id);
+            if (!track.source || !sid) return null;
+            params.set('source', track.source);
+            params.set('id', sid);
+        }
+        try {
+            const res = await fetch(`${this.endpoints.worker}/lyrics?${params}`);
+            const result = await res.json();
+            if (!result.success || !result.data || !Array.isArray(result.data.lines)) return null;
+            return result.data.lines.map(([t, text, translation]) => ({ time: t / 1000, text, translation }));
+        } catch (e) {
+            console.warn('Lyrics fetch failed:', e);
+            return null;
+        }
+    },
+
     async fetchLrcText(lrcUrl) {
         if (!lrcUrl || !lrcUrl.startsWith('http')) return lrcUrl;
 
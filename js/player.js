@@ -266,7 +266,15 @@ class MusicPlayer {
         } else if (track.lrc && track.lrc.startsWith('http')) {
             const lrcUrl = track.lrc;
             const currentId = track.id;
-            MusicAPI.fetchLrcText(lrcUrl).then(text => {
+            MusicAPI.fetchLyrics(track, lrcUrl).then(async lines => {
+                if (lines && lines.length > 0) {
+                    if (this.currentTrack && this.currentTrack.id === currentId) {
+                        this.lyrics = lines;
+                        UI.setLyrics(this.lyrics);
+                    }
+                    return;
+                }
+                const text = await MusicAPI.fetchLrcText(lrcUrl);
                 if (text && this.currentTrack && this.currentTrack.id === currentId) {
                     this.currentTrack.lrc = text;
                     this.parseLyrics(text);
@@ -175,17 +175,6 @@ const DataService = {
                 return false;
             }
 
-            // 静默获取新歌曲
-            const result = await MusicAPI.getPlaylistSongs(platform, extId);
-            if (!result || !result.tracks) {
-                console.warn(`歌单 ${pl.name} 同步结果为空`);
-                return false;
-            }
-
-            const freshSongs = result.tracks.map(s => this.cleanSong(s));
-
-            // 使用后端增量同步端点
-            // 该端点处理添加新歌曲并移除已删除的歌曲（同时保留手动添加的歌曲）
             // 发送前清理名称以防止前缀堆积
             let cleanPlName = pl.name;
             const prefixes = ['网易:', 'QQ:', '酷我:', 'netease:', 'qq:', 'kuwo:', '网易：', '酷我：', 'QQ：'];
@@ -200,6 +189,24 @@ const DataService = {
                 }
             }
 
+            // 优先由后端直接拉取歌单并同步 (并发分块获取，浏览器只需一次请求)
+            if (await this.syncExternalOnServer(platform, extId, cleanPlName)) {
+                UI.showToast(`歌单 "${pl.name}" 同步完成`, 'success');
+                await this.fetchPlaylists();
+                return true;
+            }
+
+            // 静默获取新歌曲
+            const result = await MusicAPI.getPlaylistSongs(platform, extId);
+            if (!result || !result.tracks) {
+                console.warn(`歌单 ${pl.name} 同步结果为空`);
+                return false;
+            }
+
+            const freshSongs = result.tracks.map(s => this.cleanSong(s));
+
+            // 使用后端增量同步端点
+            // 该端点处理添加新歌曲并移除已删除的歌曲（同时保留手动添加的歌曲）
             const res = await fetch(`${API_BASE}/playlists/sync`, {
                 method: 'POST',
                 headers: { ...this.authHeader, 'Content-Type': 'application/json' },
@@ -223,6 +230,21 @@ const DataService = {
         }
     },
 
+    async syncExternalOnServer(platform, externalId, name) {
+        try {
+            const res = await fetch(`${API_BASE}/playlists/sync-external`, {
+                method: 'POST',
+                headers: { ...this.authHeader, 'Content-Type': 'application/json' },
+                body: JSON.stringify({ platform, externalId, name })
+            });
+            const data = await res.json();
+            return res.ok && data.success;
+        } catch (e) {
+            console.warn('Server-side playlist sync failed, falling back:', e);
+            return false;
+        }
+    },
+
     checkAutoSync() {
         const LAST_SYNC_KEY = 'last_daily_sync_date';
         const now = new Date();
@@ -576,7 +598,8 @@ const DataService = {
     },
 
     async removeBatchHistory(songs) {
-        const idsToRemove = songs.map(s => s.id || s.uid);
+        // History rows are addressed by uid; the song id is not a history id.
+        const idsToRemove = songs.map(s => s.uid || s.id);
         try {
             const res = await fetch(`${API_BASE}/history/batch`, {
                 method: 'DELETE',